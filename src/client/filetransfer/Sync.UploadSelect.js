@@ -293,7 +293,7 @@ FileTransfer.Sync.DefaultUploadRender = Core.extend(FileTransfer.Sync.UploadRend
     
     /** @see FileTransfer.Sync.UploadRender#cancel */
     cancel: function() {
-        this._monitor.cancel = true;
+        this._monitor.sendCancel();
     },
     
     /** @see FileTransfer.Sync.UploadRender#dispose */
@@ -385,7 +385,8 @@ FileTransfer.Sync.Monitor = Core.extend(Core.Web.Scheduler.Runnable, {
     /**
      * Method to invoke with progress information.
      * The method will be provided with a status object containing
-     * progress, size, and complete properties.
+     * progress, size, rate (bytes per second), eta (milliseconds, -1 if unknown), paused, quota (remaining bytes,
+     * -1 if unlimited), and complete properties.
      * @type Function
      */
     _onProgress: null,
@@ -404,6 +405,22 @@ FileTransfer.Sync.Monitor = Core.extend(Core.Web.Scheduler.Runnable, {
         this._onProgress = onProgress;
     },
     
+    /**
+     * Sends a cancel command to the server immediately, rather than with the next poll.
+     * Should the request fail, the command is sent with the next poll.
+     */
+    sendCancel: function() {
+        var url = this._monitorUrl;
+        url += (url.indexOf("?") == -1 ? "?" : "&") + "command=cancel";
+        var conn = new Core.Web.HttpConnection(url, "GET");
+        conn.addResponseListener(Core.method(this, function(e) {
+            if (e.source.getStatus() != 200) {
+                this.cancel = true;
+            }
+        }));
+        conn.connect();
+    },
+    
     /**
      * Starts the progress monitor.
      */
@@ -432,6 +449,10 @@ FileTransfer.Sync.Monitor = Core.extend(Core.Web.Scheduler.Runnable, {
             var data = p.split("/");
             status.progress = parseInt(data[0], 10);
             status.size = parseInt(data[1], 10);
+            status.rate = parseInt(s.getAttribute("r") || "0", 10);
+            status.eta = parseInt(s.getAttribute("e") || "-1", 10);
+            status.paused = s.getAttribute("v") == "pause";
+            status.quota = parseInt(s.getAttribute("q") || "-1", 10);
         } else {
             v = s.getAttribute("v"); // Value
             switch (v) {
@@ -31,13 +31,25 @@ package nextapp.echo.filetransfer.app;
 
 import java.util.EventListener;
 import java.util.TooManyListenersException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import nextapp.echo.app.ApplicationInstance;
 import nextapp.echo.app.Border;
 import nextapp.echo.app.Component;
 import nextapp.echo.app.Insets;
+import nextapp.echo.app.TaskQueueHandle;
 import nextapp.echo.filetransfer.app.event.UploadEvent;
 import nextapp.echo.filetransfer.app.event.UploadListener;
+import nextapp.echo.filetransfer.app.event.UploadProcessingEvent;
+import nextapp.echo.filetransfer.app.event.UploadProcessingListener;
 import nextapp.echo.filetransfer.app.event.UploadProgressListener;
+import nextapp.echo.filetransfer.model.AsyncUploadProcessDispatcher;
 import nextapp.echo.filetransfer.model.Upload;
 import nextapp.echo.filetransfer.model.UploadProcess;
 import nextapp.echo.filetransfer.model.event.UploadProcessEvent;
@@ -55,28 +67,210 @@ public abstract class AbstractUploadSelect extends Component {
 
     public static final String PROPERTY_INSETS = "insets";
     public static final String PROPERTY_BORDER = "border";
+    public static final String PROPERTY_PROCESSOR_PROFILE = "processorProfile";
 
-    //FIXME Must release upload process listeners as soon as possible.
-    private UploadProcessListener uploadProcessListener = new UploadProcessListener() {
-
-        public void uploadCancel(UploadProcessEvent e) {
-            doUploadCancel(e.getUpload());
+    private static final UploadProcessingStage[] EMPTY_STAGES = new UploadProcessingStage[0];
+    private static final int DEFAULT_PROCESSING_QUEUE_CAPACITY = 256;
+    
+    /**
+     * The shared default processing executor.
+     */
+    private static Executor defaultProcessingExecutor;
+    
+    /**
+     * Returns the shared executor running the processing pipelines of components which have not been assigned an 
+     * executor.  The executor has one daemon thread per available processor and a bounded queue, uploads submitted 
+     * while the queue is full are reported as failed.  It is created on first use.
+     * 
+     * @return the shared executor
+     */
+    private static synchronized Executor getDefaultProcessingExecutor() {
+        if (defaultProcessingExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue(DEFAULT_PROCESSING_QUEUE_CAPACITY), new ThreadFactory() {
+                
+                /**
+                 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+                 */
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Echo File Transfer Upload Processing");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            defaultProcessingExecutor = executor;
         }
-
-        public void uploadComplete(UploadProcessEvent e) {
-            // Do nothing.
+        return defaultProcessingExecutor;
+    }
+    
+    /**
+     * Stops the threads of the shared default processing executor, e.g., when the web application is undeployed, such 
+     * that they do not retain the application's class loader.  Uploads being processed are interrupted, those not yet
+     * processed are discarded.  The executor is recreated should further uploads be processed.
+     */
+    public static synchronized void shutdownDefaultProcessingExecutor() {
+        if (defaultProcessingExecutor != null) {
+            ((ExecutorService) defaultProcessingExecutor).shutdownNow();
+            defaultProcessingExecutor = null;
         }
-
-        public void uploadProgress(UploadProcessEvent e) {
-            doUploadProgress(e.getUpload());
+    }
+    
+    /**
+     * Runs the processing pipeline over the completed uploads of an {@link UploadProcess}, outside of the user 
+     * interface thread.  Outcomes are delivered to the component through its processing task queue, the process is
+     * disposed once all uploads have been processed.
+     */
+    private class ProcessingJob 
+    implements Runnable {
+        
+        private ApplicationInstance app;
+        private TaskQueueHandle taskQueue;
+        private UploadProcess uploadProcess;
+        private UploadProcessingStage[] stages;
+        
+        /**
+         * Creates a new <code>ProcessingJob</code>.
+         * 
+         * @param app the application instance of the component
+         * @param taskQueue the task queue through which outcomes are delivered
+         * @param uploadProcess the completed process
+         * @param stages the stages to run
+         */
+        private ProcessingJob(ApplicationInstance app, TaskQueueHandle taskQueue, UploadProcess uploadProcess, 
+                UploadProcessingStage[] stages) {
+            super();
+            this.app = app;
+            this.taskQueue = taskQueue;
+            this.uploadProcess = uploadProcess;
+            this.stages = stages;
         }
-
-        public void uploadStart(UploadProcessEvent e) {
-            doUploadStart(e.getUpload());
+        
+        /**
+         * Fails the job without running the stages, e.g., because the executor rejected it.  Each completed upload is 
+         * reported as failed with the specified exception, through the task queue.
+         * 
+         * @param failure the exception
+         */
+        private void fail(Exception failure) {
+            process(failure);
         }
-    };
+        
+        /**
+         * Processes the completed uploads and delivers the outcomes.
+         * 
+         * @param failure the exception with which every upload fails without running the stages, or null to run the
+         *        stages
+         */
+        private void process(Exception failure) {
+            try {
+                Upload[] uploads = uploadProcess.getUploads();
+                for (int i = 0; i < uploads.length; ++i) {
+                    if (uploads[i].getStatus() != Upload.STATUS_COMPLETE) {
+                        continue;
+                    }
+                    final Upload upload = uploads[i];
+                    Object result = null;
+                    Exception exception = failure;
+                    try {
+                        for (int j = 0; exception == null && j < stages.length; ++j) {
+                            result = stages[j].process(upload, result);
+                        }
+                    } catch (Exception ex) {
+                        result = null;
+                        exception = ex;
+                    }
+                    final Object finalResult = result;
+                    final Exception finalException = exception;
+                    enqueue(new Runnable() {
+                        public void run() {
+                            if (finalException == null) {
+                                doUploadProcessed(upload, finalResult);
+                            } else {
+                                doUploadProcessingFailed(upload, finalException);
+                            }
+                        }
+                    });
+                }
+            } finally {
+                uploadProcess.dispose();
+                enqueue(new Runnable() {
+                    public void run() {
+                        processingJobEnded(taskQueue);
+                    }
+                });
+            }
+        }
+        
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            process(null);
+        }
+        
+        /**
+         * Enqueues a task for execution in the user interface thread, unless the task queue has been removed.
+         * 
+         * @param task the task
+         */
+        private void enqueue(Runnable task) {
+            if (processingTaskQueue == taskQueue) {
+                app.enqueueTask(taskQueue, task);
+            }
+        }
+    }
+
+    /**
+     * The listener registered with <code>uploadProcess</code>: either a listener forwarding events to this component
+     * or an asynchronous wrapper of it.
+     */
+    private transient UploadProcessListener registeredProcessListener;
+    
+    /**
+     * Flag indicating whether <code>UploadProgressListener</code>s are notified asynchronously.
+     */
+    private boolean asynchronousProgress = false;
+    
+    /**
+     * The active {@link UploadProcess}.  Processes are node-local state held by the upload receiver, they are not
+     * serialized with the component (and thus the session).
+     */
+    private transient UploadProcess uploadProcess;
+    
+    /**
+     * The stages of the processing pipeline.
+     */
+    private UploadProcessingStage[] processingStages = EMPTY_STAGES;
+    
+    /**
+     * The executor running the processing pipeline, or null to use the shared default executor.
+     */
+    private transient Executor processingExecutor;
     
-    private UploadProcess uploadProcess;
+    /**
+     * The task queue through which processing outcomes are delivered, present while processing jobs are pending.
+     */
+    private transient volatile TaskQueueHandle processingTaskQueue;
+    
+    /**
+     * The number of pending processing jobs, accessed only from the user interface thread.
+     */
+    private transient int pendingProcessingJobs;
+    
+    /**
+     * Adds a stage to the end of the processing pipeline run on completed uploads.
+     * 
+     * @param stage the stage to add
+     * @see UploadProcessingStage
+     */
+    public void addProcessingStage(UploadProcessingStage stage) {
+        UploadProcessingStage[] stages = new UploadProcessingStage[processingStages.length + 1];
+        System.arraycopy(processingStages, 0, stages, 0, processingStages.length);
+        stages[processingStages.length] = stage;
+        processingStages = stages;
+    }
 
     /**
      * Adds an <code>UploadListener</code> to be notified of file uploads.
@@ -88,6 +282,15 @@ public abstract class AbstractUploadSelect extends Component {
         firePropertyChange(UPLOAD_LISTENERS_CHANGED_PROPERTY, null, l);
     }
     
+    /**
+     * Adds an <code>UploadProcessingListener</code> to be notified of the outcome of the processing pipeline.
+     * 
+     * @param l the listener to add
+     */
+    public void addUploadProcessingListener(UploadProcessingListener l) {
+        getEventListenerList().addListener(UploadProcessingListener.class, l);
+    }
+    
     /**
      * Adds an <code>UploadProgressListener</code> to be notified of file upload progress.
      * <p>
@@ -112,6 +315,33 @@ public abstract class AbstractUploadSelect extends Component {
         }
     }
     
+    /**
+     * Creates a listener forwarding the events of the active {@link UploadProcess} to this component.
+     * 
+     * @return the listener
+     */
+    //FIXME Must release upload process listeners as soon as possible.
+    private UploadProcessListener createUploadProcessListener() {
+        return new UploadProcessListener() {
+    
+            public void uploadCancel(UploadProcessEvent e) {
+                doUploadCancel(e.getUpload());
+            }
+    
+            public void uploadComplete(UploadProcessEvent e) {
+                // Do nothing.
+            }
+    
+            public void uploadProgress(UploadProcessEvent e) {
+                doUploadProgress(e.getUpload());
+            }
+    
+            public void uploadStart(UploadProcessEvent e) {
+                doUploadStart(e.getUpload());
+            }
+        };
+    }
+    
     /**
      * Provides notification that the specified upload has been canceled.
      * 
@@ -141,6 +371,34 @@ public abstract class AbstractUploadSelect extends Component {
         }
     }
 
+    /**
+     * Provides notification that the processing pipeline has completed for the specified upload.
+     * 
+     * @param upload the upload
+     * @param result the result of the last processing stage
+     */
+    public void doUploadProcessed(Upload upload, Object result) {
+        UploadProcessingEvent e = new UploadProcessingEvent(this, upload, result, null);
+        EventListener[] listeners = getEventListenerList().getListeners(UploadProcessingListener.class);
+        for (int i = 0; i < listeners.length; ++i){
+            ((UploadProcessingListener) listeners[i]).uploadProcessed(e);
+        }
+    }
+    
+    /**
+     * Provides notification that the processing pipeline has failed for the specified upload.
+     * 
+     * @param upload the upload
+     * @param exception the exception which terminated processing
+     */
+    public void doUploadProcessingFailed(Upload upload, Exception exception) {
+        UploadProcessingEvent e = new UploadProcessingEvent(this, upload, null, exception);
+        EventListener[] listeners = getEventListenerList().getListeners(UploadProcessingListener.class);
+        for (int i = 0; i < listeners.length; ++i){
+            ((UploadProcessingListener) listeners[i]).uploadProcessingFailed(e);
+        }
+    }
+
     /**
      * Provides notification that the component now starts with an upload.
      */
@@ -183,6 +441,60 @@ public abstract class AbstractUploadSelect extends Component {
         }
     }
     
+    /**
+     * @see nextapp.echo.app.Component#dispose()
+     */
+    public void dispose() {
+        super.dispose();
+        TaskQueueHandle taskQueue = processingTaskQueue;
+        if (taskQueue != null) {
+            // Outcomes of pending processing jobs are discarded, their processes are still disposed by the jobs.
+            processingTaskQueue = null;
+            pendingProcessingJobs = 0;
+            getApplicationInstance().removeTaskQueue(taskQueue);
+        }
+    }
+    
+    /**
+     * Returns the executor running the processing pipeline.
+     * 
+     * @return the executor
+     * @see #setProcessingExecutor(Executor)
+     */
+    public Executor getProcessingExecutor() {
+        Executor processingExecutor = this.processingExecutor;
+        return processingExecutor == null ? getDefaultProcessingExecutor() : processingExecutor;
+    }
+    
+    /**
+     * Returns the stages of the processing pipeline.
+     * 
+     * @return the stages, in the order they are run
+     */
+    public UploadProcessingStage[] getProcessingStages() {
+        return (UploadProcessingStage[]) processingStages.clone();
+    }
+    
+    /**
+     * Returns the name of the upload processor profile used to receive uploads of this component.
+     * 
+     * @return the name of the profile, or null if the default upload processor is used
+     * @see #setProcessorProfile(String)
+     */
+    public String getProcessorProfile() {
+        return (String) get(PROPERTY_PROCESSOR_PROFILE);
+    }
+    
+    /**
+     * Determines whether <code>UploadProgressListener</code>s are notified asynchronously.
+     * 
+     * @return true if progress listeners are notified asynchronously
+     * @see #setAsynchronousProgress(boolean)
+     */
+    public boolean isAsynchronousProgress() {
+        return asynchronousProgress;
+    }
+    
     /**
      * Determines if any <code>UploadListener</code>s are currently registered.
      * 
@@ -192,6 +504,15 @@ public abstract class AbstractUploadSelect extends Component {
         return !hasEventListenerList() || getEventListenerList().getListenerCount(UploadListener.class) > 0;
     }
 
+    /**
+     * Determines if any <code>UploadProcessingListener</code>s are currently registered.
+     * 
+     * @return true if any <code>UploadProcessingListener</code>s are registered
+     */
+    public boolean hasUploadProcessingListeners() {
+        return hasEventListenerList() && getEventListenerList().getListenerCount(UploadProcessingListener.class) > 0;
+    }
+
     /**
      * Determines if any <code>UploadProgressListener</code>s are currently registered.
      * 
@@ -215,6 +536,79 @@ public abstract class AbstractUploadSelect extends Component {
         }
     }
     
+    /**
+     * Concludes a completed {@link UploadProcess} after its uploads have been reported to the 
+     * <code>UploadListener</code>s.  If processing stages are present, the completed uploads are submitted to the 
+     * processing pipeline and the process is disposed once they have been processed, otherwise it is disposed 
+     * immediately.  Must be invoked from the user interface thread.
+     * 
+     * @param uploadProcess the completed process
+     */
+    public void processUploads(UploadProcess uploadProcess) {
+        UploadProcessingStage[] stages = processingStages;
+        if (stages.length == 0) {
+            uploadProcess.dispose();
+            return;
+        }
+        
+        ApplicationInstance app = getApplicationInstance();
+        if (processingTaskQueue == null) {
+            processingTaskQueue = app.createTaskQueue();
+        }
+        ProcessingJob job = new ProcessingJob(app, processingTaskQueue, uploadProcess, stages);
+        ++pendingProcessingJobs;
+        try {
+            getProcessingExecutor().execute(job);
+        } catch (RejectedExecutionException ex) {
+            // Executor saturated or shut down, outcomes are delivered as for a job whose stages failed.
+            job.fail(ex);
+        }
+    }
+    
+    /**
+     * Provides notification that a processing job has ended, removing the processing task queue if no further jobs
+     * are pending.  Invoked from the user interface thread.
+     * 
+     * @param taskQueue the task queue of the job
+     */
+    private void processingJobEnded(TaskQueueHandle taskQueue) {
+        if (taskQueue != processingTaskQueue) {
+            return;
+        }
+        if (--pendingProcessingJobs == 0) {
+            getApplicationInstance().removeTaskQueue(processingTaskQueue);
+            processingTaskQueue = null;
+        }
+    }
+    
+    /**
+     * Removes a stage from the processing pipeline.
+     * 
+     * @param stage the stage to remove
+     */
+    public void removeProcessingStage(UploadProcessingStage stage) {
+        for (int i = 0; i < processingStages.length; ++i) {
+            if (processingStages[i] == stage) {
+                UploadProcessingStage[] stages = new UploadProcessingStage[processingStages.length - 1];
+                System.arraycopy(processingStages, 0, stages, 0, i);
+                System.arraycopy(processingStages, i + 1, stages, i, stages.length - i);
+                processingStages = stages;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Removes an <code>UploadProcessingListener</code> from being notified of the outcome of the processing pipeline.
+     * 
+     * @param l the listener to remove
+     */
+    public void removeUploadProcessingListener(UploadProcessingListener l) {
+        if (hasEventListenerList()) {
+            getEventListenerList().removeListener(UploadProcessingListener.class, l);
+        }
+    }
+    
     /**
      * Removes an <code>UploadProgressListener</code> to be notified of file upload progress.
      * <p>
@@ -244,6 +638,28 @@ public abstract class AbstractUploadSelect extends Component {
         firePropertyChange(UPLOAD_LISTENERS_CHANGED_PROPERTY, l, null);
     }
     
+    /**
+     * Sets the executor running the processing pipeline, e.g., to bound the processing of an application 
+     * separately.  By default, a shared executor with one thread per available processor and a bounded queue is
+     * used.  The executor is not serialized with the component.
+     * 
+     * @param newValue the new executor, or null to use the shared default executor
+     */
+    public void setProcessingExecutor(Executor newValue) {
+        processingExecutor = newValue;
+    }
+    
+    /**
+     * Sets the name of the upload processor profile used to receive uploads of this component, determining, e.g., its
+     * size limit, storage location and bandwidth.  Profiles are registered with the upload receiver's 
+     * <code>UploadProcessorFactory</code>.
+     * 
+     * @param newValue the name of the profile, or null to use the default upload processor
+     */
+    public void setProcessorProfile(String newValue) {
+        set(PROPERTY_PROCESSOR_PROFILE, newValue);
+    }
+    
     /**
      * Sets the active {@link UploadProcess} representing incoming uploads.
      * This operation does not and may not change the UI state, it may be invoked outside of a user interface thread.
@@ -252,13 +668,28 @@ public abstract class AbstractUploadSelect extends Component {
      */
     public void setUploadProcess(UploadProcess uploadProcess) {
         if (this.uploadProcess != null) {
-            this.uploadProcess.removeProcessListener(uploadProcessListener);
+            this.uploadProcess.removeProcessListener(registeredProcessListener);
         }
         this.uploadProcess = uploadProcess;
         if (this.uploadProcess != null) {
-            this.uploadProcess.addProcessListener(uploadProcessListener);
+            UploadProcessListener uploadProcessListener = createUploadProcessListener();
+            registeredProcessListener = asynchronousProgress 
+                    ? AsyncUploadProcessDispatcher.getInstance().wrap(uploadProcessListener) : uploadProcessListener;
+            this.uploadProcess.addProcessListener(registeredProcessListener);
         }
     }
+    
+    /**
+     * Sets whether <code>UploadProgressListener</code>s are notified asynchronously, using the shared
+     * {@link AsyncUploadProcessDispatcher}.  When enabled, slow progress listeners do not delay the receipt of 
+     * the upload, and progress notifications are coalesced when listeners fall behind.
+     * The setting applies to uploads started after it is changed.
+     * 
+     * @param newValue true to notify progress listeners asynchronously
+     */
+    public void setAsynchronousProgress(boolean newValue) {
+        asynchronousProgress = newValue;
+    }
 
     /**
      * Returns the default inset between the border and cells of the component.
@@ -0,0 +1,61 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.app;
+
+import java.io.Serializable;
+
+import nextapp.echo.filetransfer.model.Upload;
+
+/**
+ * A stage of the processing pipeline of an {@link AbstractUploadSelect}, performing work on a completed upload
+ * (e.g., scanning, thumbnail generation or storage) outside of the user interface thread.
+ * <p>
+ * The stages of a pipeline are invoked in the order in which they were added, each receiving the result of the 
+ * previous stage.  Stages are invoked by the threads of the component's processing executor, implementations
+ * MAY NOT update the state of the application's user interface or component hierarchy.  Results should instead be
+ * handled by an {@link nextapp.echo.filetransfer.app.event.UploadProcessingListener}.
+ * <p>
+ * Stages are held by the component, and are thus serialized with it when the session is passivated or replicated.
+ */
+public interface UploadProcessingStage 
+extends Serializable {
+
+    /**
+     * Processes a completed upload.
+     * 
+     * @param upload the upload, its data remains available until all stages have completed
+     * @param input the result of the previous stage, or null if this is the first stage
+     * @return the result of the stage, passed to the next stage or, by the last stage, to the 
+     *         <code>UploadProcessingListener</code>s
+     * @throws Exception if processing fails, in which case no further stages are invoked for the upload
+     */
+    public Object process(Upload upload, Object input)
+    throws Exception;
+}
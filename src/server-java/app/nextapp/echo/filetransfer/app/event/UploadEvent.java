@@ -63,6 +63,27 @@ public class UploadEvent extends EventObject {
         return upload;
     }
     
+    /**
+     * Returns the estimated time remaining until the upload is complete.
+     * 
+     * @return the estimated time remaining, in milliseconds, 0 if the upload is no longer in progress, or -1
+     *         if no estimate is available
+     * @see Upload#getEstimatedTimeRemaining()
+     */
+    public long getEstimatedTimeRemaining() {
+        return upload == null ? -1 : upload.getEstimatedTimeRemaining();
+    }
+    
+    /**
+     * Returns the transfer rate of the upload.
+     * 
+     * @return the transfer rate, in bytes per second, or 0 if not yet measured
+     * @see Upload#getTransferRate()
+     */
+    public long getTransferRate() {
+        return upload == null ? 0 : upload.getTransferRate();
+    }
+    
     /**
      * @see java.util.EventObject#toString()
      */
@@ -0,0 +1,89 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.app.event;
+
+import nextapp.echo.filetransfer.model.Upload;
+
+/**
+ * An event describing the outcome of processing a file upload.
+ */
+public class UploadProcessingEvent extends UploadEvent {
+    
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The result of the last processing stage.
+     */
+    private Object result;
+    
+    /**
+     * The exception which terminated processing, if any.
+     */
+    private Exception exception;
+    
+    /**
+     * Creates a new <code>UploadProcessingEvent</code>.
+     * 
+     * @param source the source of the event
+     * @param upload the processed <code>Upload</code>
+     * @param result the result of the last processing stage
+     * @param exception the exception which terminated processing, or null if processing succeeded
+     */
+    public UploadProcessingEvent(Object source, Upload upload, Object result, Exception exception) {
+        super(source, upload);
+        this.result = result;
+        this.exception = exception;
+    }
+    
+    /**
+     * Returns the exception which terminated processing.
+     * 
+     * @return the exception, or null if processing succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+    
+    /**
+     * Returns the result of the last processing stage.
+     * 
+     * @return the result, or null if processing failed
+     */
+    public Object getResult() {
+        return result;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.app.event.UploadEvent#toString()
+     */
+    public String toString() {
+        return "UploadProcessingEvent: " + getUpload() + (exception == null ? "" : ", failed: " + exception);
+    }
+}
@@ -0,0 +1,58 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.app.event;
+
+import java.util.EventListener;
+
+/**
+ * Listener interface for receiving the results of an upload processing pipeline as 
+ * <code>UploadProcessingEvent</code>s.
+ */
+public interface UploadProcessingListener extends EventListener {
+    
+    /**
+     * Invoked when all processing stages have completed for an upload.
+     * This method will be invoked by a user interface thread, enabling the user interface state to
+     * be changed as a result.
+     * 
+     * @param e the <code>UploadProcessingEvent</code> describing the upload and the result of the last stage
+     */
+    public void uploadProcessed(UploadProcessingEvent e);
+
+    /**
+     * Invoked when a processing stage has failed for an upload, or when the upload could not be scheduled for 
+     * processing.
+     * This method will be invoked by a user interface thread, enabling the user interface state to
+     * be changed as a result.
+     * 
+     * @param e the <code>UploadProcessingEvent</code> describing the upload and the failure
+     */
+    public void uploadProcessingFailed(UploadProcessingEvent e);
+}
@@ -0,0 +1,585 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nextapp.echo.filetransfer.model.event.UploadProcessEvent;
+import nextapp.echo.filetransfer.model.event.UploadProcessListener;
+import nextapp.echo.filetransfer.model.event.UploadProcessProgressListener;
+
+/**
+ * Dispatches {@link UploadProcessListener} notifications asynchronously, such that slow listeners do not delay the
+ * thread receiving an upload.
+ * <p>
+ * Listeners are wrapped using {@link #wrap(UploadProcessListener)} and the wrapper is registered with the
+ * {@link UploadProcess} in place of the listener.  Each wrapped listener receives its notifications serially, in the
+ * order they occurred.  Progress notifications are coalesced: if the listener falls behind, only the latest progress 
+ * of each upload is delivered.  Start, complete and cancel notifications are never dropped.
+ * <p>
+ * A watchdog reports listeners whose notification methods take longer than a configurable threshold to return.
+ * <p>
+ * Notifications are never delivered by the notifying thread: should the executor be saturated, delivery is retried
+ * after a short delay, while further progress notifications continue to be coalesced.  Threads of a dispatcher are
+ * stopped by {@link #shutdown()}.
+ */
+public class AsyncUploadProcessDispatcher {
+    
+    private static final int TYPE_START = 0;
+    private static final int TYPE_PROGRESS = 1;
+    private static final int TYPE_COMPLETE = 2;
+    private static final int TYPE_CANCEL = 3;
+    
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long DEFAULT_SLOW_LISTENER_THRESHOLD = 1000;
+    private static final long RETRY_DELAY = 50;
+    
+    private static final Logger logger = Logger.getLogger(AsyncUploadProcessDispatcher.class.getName());
+    
+    /**
+     * The shared instance.
+     */
+    private static AsyncUploadProcessDispatcher instance;
+    
+    /**
+     * Returns a shared <code>AsyncUploadProcessDispatcher</code>, with one thread per available processor.
+     * 
+     * @return the shared dispatcher
+     */
+    public static synchronized AsyncUploadProcessDispatcher getInstance() {
+        if (instance == null) {
+            instance = new AsyncUploadProcessDispatcher(Runtime.getRuntime().availableProcessors(), 
+                    DEFAULT_SLOW_LISTENER_THRESHOLD);
+        }
+        return instance;
+    }
+    
+    /**
+     * Shuts down the shared <code>AsyncUploadProcessDispatcher</code>, if it has been created, e.g., when the web 
+     * application is undeployed.  A new shared dispatcher is created if it is subsequently requested.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+    
+    /**
+     * A pending notification.
+     */
+    private static class Notification {
+        
+        private int type;
+        private UploadProcessEvent event;
+        private UploadProcess process;
+        private Upload upload;
+        private long progress;
+    }
+    
+    /**
+     * Wrapper which queues notifications for asynchronous delivery to a listener.
+     */
+    private class AsyncListener 
+    implements UploadProcessProgressListener, Runnable {
+        
+        /**
+         * The wrapped listener.
+         */
+        private UploadProcessListener listener;
+        
+        /**
+         * Queue of pending {@link Notification}s.
+         */
+        private LinkedList queue = new LinkedList();
+        
+        /**
+         * Mapping between {@link Upload}s and their pending, not yet delivered progress {@link Notification}s.
+         */
+        private Map pendingProgress = new HashMap();
+        
+        /**
+         * Flag indicating whether this listener has been submitted to the executor to deliver queued notifications.
+         */
+        private boolean scheduled = false;
+        
+        /**
+         * The time at which the notification currently being delivered was started, or 0 if none is being delivered.
+         */
+        private volatile long deliveryStartTime = 0;
+        
+        /**
+         * Flag indicating whether the watchdog has reported the notification currently being delivered.
+         */
+        private volatile boolean reported = false;
+        
+        /**
+         * Creates a new <code>AsyncListener</code>.
+         * 
+         * @param listener the listener to wrap
+         */
+        private AsyncListener(UploadProcessListener listener) {
+            super();
+            this.listener = listener;
+        }
+        
+        /**
+         * Delivers a notification to the wrapped listener.
+         * 
+         * @param notification the notification
+         */
+        private void deliver(Notification notification) {
+            switch (notification.type) {
+            case TYPE_START:
+                listener.uploadStart(notification.event);
+                break;
+            case TYPE_PROGRESS:
+                if (listener instanceof UploadProcessProgressListener) {
+                    ((UploadProcessProgressListener) listener).uploadProgress(notification.process, notification.upload, 
+                            notification.progress);
+                } else {
+                    listener.uploadProgress(new UploadProcessEvent(notification.process, notification.upload));
+                }
+                break;
+            case TYPE_COMPLETE:
+                listener.uploadComplete(notification.event);
+                break;
+            case TYPE_CANCEL:
+                listener.uploadCancel(notification.event);
+                break;
+            }
+        }
+        
+        /**
+         * Queues a start, complete or cancel notification.
+         * 
+         * @param type the notification type
+         * @param e the event
+         */
+        private void enqueue(int type, UploadProcessEvent e) {
+            Notification notification = new Notification();
+            notification.type = type;
+            notification.event = e;
+            boolean schedule;
+            synchronized (this) {
+                queue.add(notification);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+        
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object o) {
+            if (!(o instanceof AsyncListener)) {
+                return false;
+            }
+            AsyncListener that = (AsyncListener) o;
+            return getDispatcher() == that.getDispatcher() && listener.equals(that.listener);
+        }
+        
+        /**
+         * Returns the dispatcher which created this wrapper.
+         * 
+         * @return the dispatcher
+         */
+        private AsyncUploadProcessDispatcher getDispatcher() {
+            return AsyncUploadProcessDispatcher.this;
+        }
+        
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return listener.hashCode();
+        }
+        
+        /**
+         * Delivers queued notifications until the queue is empty.
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            while (true) {
+                Notification notification;
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                    notification = (Notification) queue.removeFirst();
+                    if (notification.type == TYPE_PROGRESS) {
+                        pendingProgress.remove(notification.upload);
+                    }
+                }
+                deliveryStartTime = System.currentTimeMillis();
+                try {
+                    deliver(notification);
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Upload process listener failed: " + listener, ex);
+                } finally {
+                    deliveryStartTime = 0;
+                    reported = false;
+                }
+            }
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.event.UploadProcessListener#uploadCancel(
+         *      nextapp.echo.filetransfer.model.event.UploadProcessEvent)
+         */
+        public void uploadCancel(UploadProcessEvent e) {
+            enqueue(TYPE_CANCEL, e);
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.event.UploadProcessListener#uploadComplete(
+         *      nextapp.echo.filetransfer.model.event.UploadProcessEvent)
+         */
+        public void uploadComplete(UploadProcessEvent e) {
+            enqueue(TYPE_COMPLETE, e);
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.event.UploadProcessListener#uploadProgress(
+         *      nextapp.echo.filetransfer.model.event.UploadProcessEvent)
+         */
+        public void uploadProgress(UploadProcessEvent e) {
+            uploadProgress((UploadProcess) e.getSource(), e.getUpload(), e.getUpload().getProgress());
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.event.UploadProcessProgressListener#uploadProgress(
+         *      nextapp.echo.filetransfer.model.UploadProcess, nextapp.echo.filetransfer.model.Upload, long)
+         */
+        public void uploadProgress(UploadProcess process, Upload upload, long progress) {
+            boolean schedule;
+            synchronized (this) {
+                Notification notification = (Notification) pendingProgress.get(upload);
+                if (notification != null) {
+                    // Listener has fallen behind, coalesce with the progress notification which is still queued.
+                    notification.progress = progress;
+                    return;
+                }
+                notification = new Notification();
+                notification.type = TYPE_PROGRESS;
+                notification.process = process;
+                notification.upload = upload;
+                notification.progress = progress;
+                queue.add(notification);
+                pendingProgress.put(upload, notification);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+        
+        /**
+         * Submits this listener to the executor to deliver its queued notifications.  If the executor rejects it, 
+         * submission is retried after a delay, queued notifications are discarded if the dispatcher has been 
+         * shut down.
+         */
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                if (!retry(this)) {
+                    synchronized (this) {
+                        queue.clear();
+                        pendingProgress.clear();
+                        scheduled = false;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.event.UploadProcessListener#uploadStart(
+         *      nextapp.echo.filetransfer.model.event.UploadProcessEvent)
+         */
+        public void uploadStart(UploadProcessEvent e) {
+            enqueue(TYPE_START, e);
+        }
+    }
+    
+    /**
+     * The executor on which notifications are delivered.
+     */
+    private Executor executor;
+    
+    /**
+     * Time, in milliseconds, after which a listener still processing a notification is reported as slow.
+     */
+    private long slowListenerThreshold;
+    
+    /**
+     * <code>WeakReference</code>s to all created {@link AsyncListener}s, monitored by the watchdog.  
+     * Weakly referenced, such that wrappers no longer registered with any process are discarded.
+     */
+    private List asyncListeners = new ArrayList();
+    
+    /**
+     * Timer running the watchdog and retrying rejected deliveries, created on first use.
+     */
+    private Timer timer;
+    
+    /**
+     * Flag indicating whether the watchdog has been scheduled.
+     */
+    private boolean watchdogScheduled = false;
+    
+    /**
+     * Flag indicating whether the dispatcher has been shut down.
+     */
+    private boolean shutdown = false;
+    
+    /**
+     * Flag indicating whether <code>executor</code> was created by the dispatcher, and is thus shut down with it.
+     */
+    private boolean ownExecutor = false;
+    
+    /**
+     * Creates a new <code>AsyncUploadProcessDispatcher</code> which delivers notifications on a bounded pool of 
+     * daemon threads.  Should the pool's queue fill, delivery is retried after a short delay.
+     * 
+     * @param threads the maximum number of threads
+     * @param slowListenerThreshold the time, in milliseconds, after which a listener still processing a notification 
+     *        is reported as slow, or 0 to disable reporting
+     */
+    public AsyncUploadProcessDispatcher(int threads, long slowListenerThreshold) {
+        this(createExecutor(threads), slowListenerThreshold);
+        ownExecutor = true;
+    }
+    
+    /**
+     * Creates a new <code>AsyncUploadProcessDispatcher</code> which delivers notifications using the specified
+     * <code>Executor</code>.  Notifications rejected by the executor are retried after a short delay, they are never
+     * delivered by the notifying thread.
+     * 
+     * @param executor the executor on which notifications should be delivered
+     * @param slowListenerThreshold the time, in milliseconds, after which a listener still processing a notification 
+     *        is reported as slow, or 0 to disable reporting
+     */
+    public AsyncUploadProcessDispatcher(Executor executor, long slowListenerThreshold) {
+        super();
+        this.executor = executor;
+        this.slowListenerThreshold = slowListenerThreshold;
+    }
+    
+    /**
+     * Creates the default bounded executor.
+     * 
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    private static Executor createExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+                new LinkedBlockingQueue(DEFAULT_QUEUE_CAPACITY), new ThreadFactory() {
+            
+            /**
+             * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+             */
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Echo File Transfer Dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    /**
+     * Checks for listeners exceeding the slow listener threshold.
+     */
+    private void checkListeners() {
+        List listeners = new ArrayList();
+        synchronized (asyncListeners) {
+            Iterator it = asyncListeners.iterator();
+            while (it.hasNext()) {
+                Object asyncListener = ((WeakReference) it.next()).get();
+                if (asyncListener == null) {
+                    it.remove();
+                } else {
+                    listeners.add(asyncListener);
+                }
+            }
+        }
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < listeners.size(); ++i) {
+            AsyncListener asyncListener = (AsyncListener) listeners.get(i);
+            long startTime = asyncListener.deliveryStartTime;
+            if (startTime != 0 && !asyncListener.reported && time - startTime > slowListenerThreshold) {
+                asyncListener.reported = true;
+                slowListener(asyncListener.listener, time - startTime);
+            }
+        }
+    }
+    
+    /**
+     * Returns the timer, creating it if required.
+     * 
+     * @return the timer, or null if the dispatcher has been shut down
+     */
+    private synchronized Timer getTimer() {
+        if (shutdown) {
+            return null;
+        }
+        if (timer == null) {
+            timer = new Timer("Echo File Transfer Dispatcher Watchdog", true);
+        }
+        return timer;
+    }
+    
+    /**
+     * Schedules a listener rejected by the executor for another submission attempt after a delay.
+     * 
+     * @param asyncListener the rejected listener
+     * @return true if the attempt was scheduled, false if the dispatcher has been shut down
+     */
+    private boolean retry(final AsyncListener asyncListener) {
+        Timer timer = getTimer();
+        if (timer == null) {
+            return false;
+        }
+        try {
+            timer.schedule(new TimerTask() {
+                
+                /**
+                 * @see java.util.TimerTask#run()
+                 */
+                public void run() {
+                    asyncListener.schedule();
+                }
+            }, RETRY_DELAY);
+            return true;
+        } catch (IllegalStateException ex) {
+            // Timer canceled by a concurrent shutdown.
+            return false;
+        }
+    }
+    
+    /**
+     * Shuts down the dispatcher, stopping its watchdog and, if the dispatcher created its executor, the executor's 
+     * threads.  Notifications which have not yet been delivered are discarded.
+     */
+    public void shutdown() {
+        Timer timer;
+        synchronized (this) {
+            shutdown = true;
+            timer = this.timer;
+            this.timer = null;
+        }
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (ownExecutor) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the time after which a listener still processing a notification is reported as slow.
+     * 
+     * @return the threshold, in milliseconds
+     */
+    public long getSlowListenerThreshold() {
+        return slowListenerThreshold;
+    }
+    
+    /**
+     * Reports a listener which has not returned from a notification method within the slow listener threshold.
+     * Default implementation logs a warning.  This method is invoked by the watchdog thread.
+     * 
+     * @param listener the slow listener
+     * @param elapsed the time, in milliseconds, the listener has been processing the notification
+     */
+    protected void slowListener(UploadProcessListener listener, long elapsed) {
+        logger.warning("Upload process listener has been processing a notification for " + elapsed + "ms: " + listener);
+    }
+    
+    /**
+     * Creates a wrapper which delivers notifications to the specified listener asynchronously.
+     * The returned wrapper should be registered with the {@link UploadProcess} in place of the listener.
+     * Wrappers created by the same dispatcher for the same listener are equal, thus a listener may be removed from
+     * a process by invoking {@link UploadProcess#removeProcessListener(UploadProcessListener)} with a new wrapper.
+     * 
+     * @param listener the listener
+     * @return the asynchronous wrapper
+     */
+    public UploadProcessListener wrap(UploadProcessListener listener) {
+        AsyncListener asyncListener = new AsyncListener(listener);
+        if (slowListenerThreshold > 0) {
+            synchronized (asyncListeners) {
+                asyncListeners.add(new WeakReference(asyncListener));
+            }
+            synchronized (this) {
+                Timer timer = getTimer();
+                if (!watchdogScheduled && timer != null) {
+                    watchdogScheduled = true;
+                    long period = Math.max(1, slowListenerThreshold / 2);
+                    timer.schedule(new TimerTask() {
+                        
+                        /**
+                         * @see java.util.TimerTask#run()
+                         */
+                        public void run() {
+                            checkListeners();
+                        }
+                    }, period, period);
+                }
+            }
+        }
+        return asyncListener;
+    }
+}
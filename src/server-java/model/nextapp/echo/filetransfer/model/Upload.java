@@ -32,6 +32,9 @@ package nextapp.echo.filetransfer.model;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 
 /**
  * A representation of an uploaded file.
@@ -53,8 +56,18 @@ public interface Upload {
     /** Status flag indicating the upload is too large. */
     public static final int STATUS_ERROR_OVERSIZE = 4;
     
+    /** Status flag indicating the upload was terminated because the client stopped sending data or sent it too slowly. */
+    public static final int STATUS_ERROR_TIMEOUT = 5;
+    
+    /** Status flag indicating the upload was rejected or terminated because the user's upload quota is exhausted. */
+    public static final int STATUS_ERROR_QUOTA = 6;
+    
+    /** Status flag indicating the upload was rejected because its content failed validation. */
+    public static final int STATUS_ERROR_CONTENT = 7;
+    
     /**
-     * Marks the upload as canceled.
+     * Marks the upload as canceled.  Data of the upload which has been received is discarded immediately, and the
+     * receiver stops writing further data of the upload.
      */
     public void cancel();
     
@@ -75,6 +88,8 @@ public interface Upload {
     /**
      * Returns the temporary file in which the data is stored.
      * May return null if the file has not been written to disk in a temporary store.
+     * The temporary file is deleted when the owning {@link UploadProcess} is disposed, use
+     * {@link #transferTo(Path)} to retain it.
      * 
      * @return the <code>File</code>, if available
      */
@@ -110,4 +125,118 @@ public interface Upload {
      * @return the number of bytes uploaded
      */
     public long getProgress();
+    
+    /**
+     * Returns the estimated time remaining until the upload is complete, based on the current transfer rate.
+     * If the size of the upload is not yet known, the estimate is based on the size of the containing
+     * {@link UploadProcess} when it contains only this upload.
+     * 
+     * @return the estimated time remaining, in milliseconds, 0 if the upload is no longer in progress, or -1
+     *         if no estimate is available
+     */
+    public long getEstimatedTimeRemaining();
+    
+    /**
+     * Returns the transfer rate of the upload, as an exponentially weighted moving average of the rates measured
+     * at each progress update.  After the upload is no longer in progress, the most recent value is returned.
+     * 
+     * @return the transfer rate, in bytes per second, or 0 if not yet measured
+     */
+    public long getTransferRate();
+    
+    /**
+     * Determines whether the upload is paused, either individually or because its {@link UploadProcess} is paused.
+     * 
+     * @return true if the upload is paused
+     */
+    public boolean isPaused();
+    
+    /**
+     * Returns a read-only, memory-mapped view of the uploaded file, allowing random access without reading the file onto
+     * the heap.  Each invocation returns a new buffer with an independent position, all sharing the same mapping.
+     * The buffer is valid until the owning {@link UploadProcess} is disposed or the upload is transferred, it must not
+     * be accessed afterward.
+     * This method may only be invoked on a completed upload.
+     * 
+     * @return the mapped buffer, or null if the upload is not stored in a temporary file
+     * @throws IOException if the file cannot be mapped, or is too large to be mapped into a single buffer 
+     *         (see {@link #mapSegments(int)})
+     * @throws IllegalStateException if the upload has not been completed
+     */
+    public ByteBuffer map()
+    throws IOException;
+    
+    /**
+     * Returns a read-only, memory-mapped view of the uploaded file as a sequence of consecutive segments.
+     * This method should be used for files which exceed 2GB in size.  Segment <code>n</code> begins at file offset
+     * <code>n * segmentSize</code>; all segments but the last one contain exactly <code>segmentSize</code> bytes.
+     * The buffers are subject to the same lifecycle as those returned by {@link #map()}.
+     * 
+     * @param segmentSize the maximum size of each segment, in bytes
+     * @return the mapped segments, or null if the upload is not stored in a temporary file
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalStateException if the upload has not been completed
+     */
+    public ByteBuffer[] mapSegments(int segmentSize)
+    throws IOException;
+    
+    /**
+     * Opens a stream which reads the uploaded data while it is still being received, such that processing of the data
+     * may overlap its transfer.  The stream always starts at the beginning of the data.  Reads block until further
+     * data has been written by the receiver, the stream ends when the upload completes.  If the upload is canceled or 
+     * fails, reads throw an <code>IOException</code>.
+     * <p>
+     * Live reading requires the receiver to provide the data as it arrives, see 
+     * {@link UploadProcess#stage(Upload, File)}.  If the upload is not received in this manner, the stream blocks until
+     * the upload has completed, after which it provides the complete data as {@link #getInputStream()} would.
+     * This method may be invoked from any thread, the returned stream should be closed by the caller.
+     * 
+     * @return a stream reading the uploaded data
+     * @throws IOException if the data cannot be read, or the upload was canceled or failed
+     */
+    public InputStream openLiveStream()
+    throws IOException;
+    
+    /**
+     * Pauses the upload.  The receiver stops reading the upload's data until it is resumed, such that the client is 
+     * slowed by network flow control rather than the transfer being aborted.  Pausing has no effect on an upload which 
+     * is no longer in progress.
+     */
+    public void pause();
+    
+    /**
+     * Resumes the upload after it has been paused with {@link #pause()}.  The upload remains paused if its 
+     * {@link UploadProcess} is paused.
+     */
+    public void resume();
+    
+    /**
+     * Moves the uploaded file to the specified destination, replacing any existing file.
+     * If the upload is stored in a temporary file on the same file system as the destination, the file is atomically 
+     * renamed and no data is copied.  Otherwise the data is copied using {@link java.nio.channels.FileChannel#transferTo},
+     * or through a buffer as a last resort.  Once this method returns, the upload's data is no longer available from
+     * {@link #getFile()} or {@link #getInputStream()}.
+     * This method may only be invoked on a completed upload, and may only be invoked once.
+     * 
+     * @param destination the destination path
+     * @throws IOException if the data cannot be transferred
+     * @throws IllegalStateException if the upload has not been completed
+     */
+    public void transferTo(Path destination)
+    throws IOException;
+    
+    /**
+     * Writes the uploaded file to the specified channel.
+     * Data stored in a temporary file is written using {@link java.nio.channels.FileChannel#transferTo}, such that the
+     * operating system may perform the copy without passing the data through the Java heap.
+     * The channel is not closed by this method.
+     * This method may only be invoked on a completed upload.  If the upload is not backed by a temporary file,
+     * this method may only be invoked once.
+     * 
+     * @param target the channel to write to
+     * @throws IOException if the data cannot be transferred
+     * @throws IllegalStateException if the upload has not been completed
+     */
+    public void transferTo(WritableByteChannel target)
+    throws IOException;
 }
@@ -33,39 +33,293 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nextapp.echo.filetransfer.model.event.UploadProcessEvent;
 import nextapp.echo.filetransfer.model.event.UploadProcessListener;
+import nextapp.echo.filetransfer.model.event.UploadProcessProgressListener;
 
 /**
  * A representation of an upload process.  Multiple {@link Upload} objects may be contained in a single <code>UploadProcess</code>
  * if they are being transferred from client to server at the same time.
+ * <p>
+ * An <code>UploadProcess</code> is updated by the thread receiving the upload while being concurrently queried by 
+ * monitoring requests.  Queries of individual properties never acquire a lock: state is held in volatile and atomic
+ * fields, and the upload and listener collections are copy-on-write arrays.  {@link #snapshot()} acquires a lock only 
+ * when it must rebuild a snapshot after the state of the process has changed.
  */
 public class UploadProcess {
     
+    /**
+     * Size of buffer used to copy upload data when a channel transfer is not possible.
+     */
+    private static final int COPY_BUFFER_SIZE = 8192;
+    
+    /**
+     * Time constant of the exponentially weighted transfer rate average, in nanoseconds.
+     * Measurements older than this have less than 1/e of the weight of the current measurement.
+     */
+    private static final double RATE_TIME_CONSTANT = 3E9;
+    
+    private static final UploadProcessListener[] EMPTY_LISTENERS = new UploadProcessListener[0];
+    private static final Upload[] EMPTY_UPLOADS = new Upload[0];
+    
+    /**
+     * Stream reading the staged file of an {@link Upload} while it is being received.
+     */
+    private class LiveInputStream extends InputStream {
+        
+        private UploadImpl upload;
+        private FileChannel channel;
+        private long position = 0;
+        
+        /**
+         * Creates a new <code>LiveInputStream</code>.
+         * 
+         * @param upload the upload to read
+         * @param channel a channel reading the staged file of the upload
+         */
+        private LiveInputStream(UploadImpl upload, FileChannel channel) {
+            super();
+            this.upload = upload;
+            this.channel = channel;
+        }
+        
+        /**
+         * @see java.io.InputStream#available()
+         */
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, upload.committed - position));
+        }
+        
+        /**
+         * @see java.io.InputStream#close()
+         */
+        public void close() 
+        throws IOException {
+            channel.close();
+        }
+        
+        /**
+         * @see java.io.InputStream#read()
+         */
+        public int read() 
+        throws IOException {
+            byte[] data = new byte[1];
+            return read(data, 0, 1) == -1 ? -1 : data[0] & 0xff;
+        }
+        
+        /**
+         * @see java.io.InputStream#read(byte[], int, int)
+         */
+        public int read(byte[] b, int off, int len) 
+        throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            long limit = upload.awaitCommitted(position);
+            if (limit == -1) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, limit - position)), position);
+            if (count == -1) {
+                throw new IOException("Upload data truncated at " + position + " bytes.");
+            }
+            position += count;
+            return count;
+        }
+    }
+    
     /**
      * {@link Upload} implementation.
      */
     private class UploadImpl
     implements Upload {
         
-        private File temporaryFile;
-        private String contentType;
-        private String fileName;
-        private InputStream in;
-        private long progress;
-        private long size;
-        private int status;
+        private volatile File temporaryFile;
+        private volatile String contentType;
+        private volatile String fileName;
+        private volatile InputStream in;
+        private volatile long progress;
+        private volatile long size;
+        private AtomicInteger status = new AtomicInteger(STATUS_IN_PROGRESS);
+        private volatile double transferRate;
+        private volatile boolean paused;
+        
+        /**
+         * The file to which the receiver writes the upload as it arrives, if live reading is supported.
+         */
+        private volatile File stagedFile;
+        
+        /**
+         * The number of bytes of <code>stagedFile</code> which have been written by the receiver.
+         */
+        private volatile long committed;
+        
+        /**
+         * The number of threads waiting for a state change of the upload, e.g., for further data to be committed or
+         * for the upload to be resumed.
+         * The receiver only acquires <code>stateLock</code> to notify waiting threads when this value is nonzero.
+         */
+        private volatile int stateWaiters;
+        
+        /**
+         * Lock on which threads wait for state changes of the upload.
+         */
+        private final Object stateLock = new Object();
+        
+        /**
+         * Time (<code>System.nanoTime()</code>) of the last progress update, only accessed by the receiving thread.
+         */
+        private long progressTime = System.nanoTime();
+        
+        /**
+         * Event describing state changes to this upload, reused for all notifications.
+         */
+        private final UploadProcessEvent event = new UploadProcessEvent(UploadProcess.this, this);
+        
+        /**
+         * Cached memory mapped segments of the temporary file, created on first request.
+         */
+        private ByteBuffer[] mappedSegments;
+        
+        /**
+         * Segment size of <code>mappedSegments</code>.
+         */
+        private int mappedSegmentSize;
+        
+        /**
+         * Waits until data beyond the specified position has been committed, or the upload is no longer in progress.
+         * 
+         * @param position the position
+         * @return the number of committed bytes, greater than <code>position</code>, or -1 if the upload has completed 
+         *         and no data beyond <code>position</code> exists
+         * @throws IOException if the upload was canceled or failed, or the waiting thread is interrupted
+         */
+        private long awaitCommitted(long position) 
+        throws IOException {
+            long committed = this.committed;
+            if (committed > position) {
+                return committed;
+            }
+            synchronized (stateLock) {
+                ++stateWaiters;
+                try {
+                    while (true) {
+                        committed = this.committed;
+                        if (committed > position) {
+                            return committed;
+                        }
+                        int status = this.status.get();
+                        if (status == STATUS_COMPLETE) {
+                            // Data is committed before completion, re-read to observe the final length.
+                            committed = this.committed;
+                            return committed > position ? committed : -1;
+                        } else if (status != STATUS_IN_PROGRESS) {
+                            throw new IOException(status == STATUS_CANCELED ? "Upload canceled." : "Upload failed.");
+                        }
+                        stateLock.wait();
+                    }
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                } finally {
+                    --stateWaiters;
+                }
+            }
+        }
         
         /**
+         * Waits until the upload is no longer paused, or is no longer in progress.
+         * 
+         * @throws InterruptedIOException if the waiting thread is interrupted
+         */
+        private void awaitResume() 
+        throws InterruptedIOException {
+            if (!isPaused() || status.get() != STATUS_IN_PROGRESS) {
+                return;
+            }
+            synchronized (stateLock) {
+                ++stateWaiters;
+                try {
+                    while (isPaused() && status.get() == STATUS_IN_PROGRESS) {
+                        stateLock.wait();
+                    }
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                } finally {
+                    --stateWaiters;
+                }
+            }
+        }
+        
+        /**
+         * Waits until the upload has been staged by the receiver, or is no longer in progress.
+         * 
+         * @throws InterruptedIOException if the waiting thread is interrupted
+         */
+        private void awaitStaged() 
+        throws InterruptedIOException {
+            if (stagedFile != null || status.get() != STATUS_IN_PROGRESS) {
+                return;
+            }
+            synchronized (stateLock) {
+                ++stateWaiters;
+                try {
+                    while (stagedFile == null && status.get() == STATUS_IN_PROGRESS) {
+                        stateLock.wait();
+                    }
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                } finally {
+                    --stateWaiters;
+                }
+            }
+        }
+        
+        /**
+         * Cancels the upload, immediately releasing any data it holds.
+         * 
          * @see nextapp.echo.filetransfer.model.Upload#cancel()
          */
         public void cancel() {
             setStatus(STATUS_CANCELED);
+            dispose();
+        }
+        
+        /**
+         * Releases resources held by the upload, deleting the temporary file and closing the input stream if either 
+         * exists.  An upload still in progress is marked with {@link #STATUS_ERROR_IO}, releasing threads waiting 
+         * for its data.
+         */
+        private synchronized void dispose() {
+            status.compareAndSet(STATUS_IN_PROGRESS, STATUS_ERROR_IO);
+            wakeWaiters();
+            mappedSegments = null;
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+                temporaryFile = null;
+            }
+            InputStream in = this.in;
+            if (in != null) {
+                this.in = null;
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    // Do nothing, data is being discarded.
+                }
+            }
         }
         
         /**
@@ -101,6 +355,26 @@ public class UploadProcess {
             }
         }
     
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#getEstimatedTimeRemaining()
+         */
+        public long getEstimatedTimeRemaining() {
+            if (status.get() != STATUS_IN_PROGRESS) {
+                return 0;
+            }
+            long size = this.size;
+            long progress = this.progress;
+            if (size <= 0) {
+                Upload[] uploads = UploadProcess.this.uploads;
+                if (uploads.length != 1 || uploads[0] != this) {
+                    return -1;
+                }
+                size = UploadProcess.this.getSize();
+                progress = UploadProcess.this.getProgress();
+            }
+            return estimateTimeRemaining(size - progress, transferRate);
+        }
+    
         /**
          * @see nextapp.echo.filetransfer.model.Upload#getProgress()
          */
@@ -115,13 +389,136 @@ public class UploadProcess {
             return size;
         }
         
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#getTransferRate()
+         */
+        public long getTransferRate() {
+            return (long) transferRate;
+        }
+        
         /**
          * @see nextapp.echo.filetransfer.model.Upload#getStatus()
          */
         public int getStatus() {  
-            return status;
+            return status.get();
         }
     
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#isPaused()
+         */
+        public boolean isPaused() {
+            return paused || UploadProcess.this.paused;
+        }
+    
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#map()
+         */
+        public ByteBuffer map() 
+        throws IOException {
+            if (temporaryFile != null && temporaryFile.length() > Integer.MAX_VALUE) {
+                throw new IOException("Upload too large to be mapped into a single buffer: " + temporaryFile.length());
+            }
+            ByteBuffer[] segments = mapSegments(Integer.MAX_VALUE);
+            return segments == null ? null : segments[0];
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#mapSegments(int)
+         */
+        public synchronized ByteBuffer[] mapSegments(int segmentSize) 
+        throws IOException {
+            if (status.get() != STATUS_COMPLETE) {
+                throw new IllegalStateException("Upload is not complete.");
+            }
+            if (segmentSize <= 0) {
+                throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+            }
+            if (temporaryFile == null) {
+                return null;
+            }
+            if (mappedSegments == null || mappedSegmentSize != segmentSize) {
+                FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.READ);
+                try {
+                    long length = channel.size();
+                    int count = (int) Math.max(1, (length + segmentSize - 1) / segmentSize);
+                    ByteBuffer[] segments = new ByteBuffer[count];
+                    for (int i = 0; i < count; ++i) {
+                        long position = (long) i * segmentSize;
+                        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, 
+                                Math.min(segmentSize, length - position));
+                    }
+                    mappedSegments = segments;
+                    mappedSegmentSize = segmentSize;
+                } finally {
+                    // Mappings remain valid after the channel is closed.
+                    channel.close();
+                }
+            }
+            ByteBuffer[] segments = new ByteBuffer[mappedSegments.length];
+            for (int i = 0; i < segments.length; ++i) {
+                segments[i] = mappedSegments[i].duplicate();
+            }
+            return segments;
+        }
+    
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#openLiveStream()
+         */
+        public InputStream openLiveStream() 
+        throws IOException {
+            awaitStaged();
+            File stagedFile = this.stagedFile;
+            if (stagedFile != null && status.get() == STATUS_IN_PROGRESS) {
+                try {
+                    return new LiveInputStream(this, FileChannel.open(stagedFile.toPath(), StandardOpenOption.READ));
+                } catch (IOException ex) {
+                    if (status.get() == STATUS_IN_PROGRESS) {
+                        throw ex;
+                    }
+                    // The upload has been completed or discarded concurrently.
+                }
+            }
+            switch (status.get()) {
+            case STATUS_COMPLETE:
+                InputStream in = getInputStream();
+                if (in == null) {
+                    throw new IOException("Upload data is no longer available.");
+                }
+                return in;
+            case STATUS_CANCELED:
+                throw new IOException("Upload canceled.");
+            default:
+                throw new IOException("Upload failed.");
+            }
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#pause()
+         */
+        public void pause() {
+            paused = true;
+            publish();
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#resume()
+         */
+        public void resume() {
+            paused = false;
+            wakeWaiters();
+            publish();
+        }
+        
+        /**
+         * Sets the number of bytes of the staged file which have been written, waking threads reading the upload.
+         * 
+         * @param committed the number of bytes written
+         */
+        private void setCommitted(long committed) {
+            this.committed = committed;
+            wakeWaiters();
+        }
+        
         /**
          * Sets the content type of the file.
          * 
@@ -163,15 +560,28 @@ public class UploadProcess {
         }
         
         /**
-         * Sets the progress.
+         * Sets the progress, updating the transfer rate.
          * 
          * @param progress the progress value
          * @see #getProgress()
          */
         public void setProgress(long progress) {
+            long time = System.nanoTime();
+            transferRate = updateRate(transferRate, progress - this.progress, time - progressTime);
+            progressTime = time;
             this.progress = progress;
         }
         
+        /**
+         * Sets the file to which the receiver writes the upload as it arrives, waking threads opening live streams.
+         * 
+         * @param stagedFile the staged file
+         */
+        private void setStagedFile(File stagedFile) {
+            this.stagedFile = stagedFile;
+            wakeWaiters();
+        }
+        
         /**
          * Sets the size of the file.
          * 
@@ -189,19 +599,118 @@ public class UploadProcess {
          * @see #getStatus()
          */
         public void setStatus(int status) {
-            if (this.status == STATUS_CANCELED) {
-                return;
+            int currentStatus;
+            do {
+                currentStatus = this.status.get();
+                if (currentStatus == STATUS_CANCELED) {
+                    return;
+                }
+            } while (!this.status.compareAndSet(currentStatus, status));
+            wakeWaiters();
+            publish();
+        }
+        
+        /**
+         * Sets the upload status, only if the current status is the expected value.
+         * 
+         * @param expectedStatus the expected current status
+         * @param status the new upload status
+         * @return true if the status was changed
+         */
+        private boolean setStatus(int expectedStatus, int status) {
+            if (!this.status.compareAndSet(expectedStatus, status)) {
+                return false;
+            }
+            wakeWaiters();
+            publish();
+            return true;
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#transferTo(java.nio.file.Path)
+         */
+        public synchronized void transferTo(Path destination) 
+        throws IOException {
+            if (status.get() != STATUS_COMPLETE) {
+                throw new IllegalStateException("Upload is not complete.");
+            }
+            if (temporaryFile != null) {
+                try {
+                    Files.move(temporaryFile.toPath(), destination, StandardCopyOption.ATOMIC_MOVE);
+                    temporaryFile = null;
+                    mappedSegments = null;
+                    return;
+                } catch (AtomicMoveNotSupportedException ex) {
+                    // Destination is on a different file store, copy the data instead.
+                }
+            }
+            FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                transferTo(out);
+            } finally {
+                out.close();
+            }
+            dispose();
+        }
+        
+        /**
+         * @see nextapp.echo.filetransfer.model.Upload#transferTo(java.nio.channels.WritableByteChannel)
+         */
+        public synchronized void transferTo(WritableByteChannel target) 
+        throws IOException {
+            if (status.get() != STATUS_COMPLETE) {
+                throw new IllegalStateException("Upload is not complete.");
+            }
+            InputStream source = getInputStream();
+            if (source == null) {
+                throw new IOException("Upload data is no longer available.");
+            }
+            try {
+                if (source instanceof FileInputStream) {
+                    FileChannel channel = ((FileInputStream) source).getChannel();
+                    long position = channel.position();
+                    long count = channel.size();
+                    while (position < count) {
+                        long transferred = channel.transferTo(position, count - position, target);
+                        if (transferred <= 0) {
+                            // Channel transfer not possible (e.g., non-blocking target), copy the remainder.
+                            break;
+                        }
+                        position += transferred;
+                    }
+                    channel.position(position);
+                    copy(channel, target);
+                } else {
+                    copy(Channels.newChannel(source), target);
+                }
+            } finally {
+                source.close();
+                if (source == in) {
+                    in = null;
+                }
+            }
+        }
+        
+        /**
+         * Wakes any threads waiting for state changes of the upload.  The lock is only acquired if threads are waiting.
+         */
+        private void wakeWaiters() {
+            if (stateWaiters != 0) {
+                synchronized (stateLock) {
+                    stateLock.notifyAll();
+                }
             }
-            this.status = status;
         }
         
         /**
          * @see java.lang.Object#toString()
          */
         public String toString() {
+            InputStream in = this.in;
             return "Upload: ContentType=" + contentType + " FileName=" + fileName + " Size=" + size +
                   " InputStream=" + (in == null ? null : in.getClass().getName()) + " Progress=" + (progress / 1000) + "K" +
-                  " Status=" + status;
+                  " Status=" + status.get();
         }
     }  
     
@@ -211,29 +720,65 @@ public class UploadProcess {
     private String id;
     
     /**
-     * Set of registered {@link UploadProcessListener}s.
+     * Event describing state changes to the process as a whole, reused for all notifications.
+     */
+    private final UploadProcessEvent processEvent = new UploadProcessEvent(this, null);
+    
+    /**
+     * Registered {@link UploadProcessListener}s.  The array is replaced, never modified, when listeners are added or removed.
      */
-    private Set listeners;
+    private volatile UploadProcessListener[] listeners = EMPTY_LISTENERS;
     
     /**
      * Combined size of all uploads.
      */
-    private long size = -1;
+    private AtomicLong size = new AtomicLong(-1);
+    
+    /**
+     * Combined progress of all uploads.
+     */
+    private AtomicLong progress = new AtomicLong();
+    
+    /**
+     * The {@link Upload}s being managed.  The array is replaced, never modified, when uploads are added or removed.
+     */
+    private volatile Upload[] uploads = EMPTY_UPLOADS;
     
     /**
-     * List of {@link Upload}s being managed.
+     * Combined transfer rate of all uploads, in bytes per second.
      */
-    private List uploadList = new ArrayList();
+    private volatile double transferRate;
     
     /**
-     * Array cache of uploads.  Cleared when uploads changed, lazy (re)created by invocations to {@link #getUploads} 
+     * Time (<code>System.nanoTime()</code>) of the last progress update, only accessed by the receiving thread.
      */
-    private Upload[] uploads = null;
+    private long progressTime = System.nanoTime();
     
     /**
      * Flag indicating whether the entire process has been canceled.
      */
-    private boolean canceled = false;
+    private volatile boolean canceled = false;
+    
+    /**
+     * Flag indicating whether the entire process has been paused.
+     */
+    private volatile boolean paused = false;
+    
+    /**
+     * The most recently built snapshot of the process state.
+     */
+    private volatile UploadProcessSnapshot snapshot;
+    
+    /**
+     * Flag indicating whether the state of the process has changed since <code>snapshot</code> was built.
+     */
+    private volatile boolean snapshotStale = false;
+    
+    /**
+     * Lock serializing the rebuilding of stale snapshots, such that a snapshot is never replaced by an older one.
+     * Only acquired by readers finding the snapshot stale, state changes merely mark the snapshot as stale.
+     */
+    private final Object snapshotLock = new Object();
     
     /**
      * Creates a new <code>UploadProcess</code>.
@@ -243,6 +788,20 @@ public class UploadProcess {
     public UploadProcess(String id) {
         super();
         this.id = id;
+        snapshot = new UploadProcessSnapshot(this, EMPTY_UPLOADS);
+    }
+    
+    /**
+     * Blocks the calling thread while an {@link Upload} is paused.  Invoked by the receiver before reading further
+     * data of the upload.  Returns immediately if the upload is not paused, or once it is resumed or is no longer in 
+     * progress.
+     * 
+     * @param upload the <code>Upload</code>
+     * @throws InterruptedIOException if the waiting thread is interrupted
+     */
+    public void awaitResume(Upload upload) 
+    throws InterruptedIOException {
+        ((UploadImpl) upload).awaitResume();
     }
     
     /**
@@ -250,11 +809,17 @@ public class UploadProcess {
      * 
      * @param l the listener to add.
      */
-    public void addProcessListener(UploadProcessListener l) {
-        if (listeners == null) {
-            listeners = new HashSet();
+    public synchronized void addProcessListener(UploadProcessListener l) {
+        UploadProcessListener[] oldListeners = listeners;
+        for (int i = 0; i < oldListeners.length; ++i) {
+            if (oldListeners[i].equals(l)) {
+                return;
+            }
         }
-        listeners.add(l);
+        UploadProcessListener[] newListeners = new UploadProcessListener[oldListeners.length + 1];
+        System.arraycopy(oldListeners, 0, newListeners, 0, oldListeners.length);
+        newListeners[oldListeners.length] = l;
+        listeners = newListeners;
     }
     
     /**
@@ -262,21 +827,32 @@ public class UploadProcess {
      * {@link UploadProcessListener}s will be notified of the cancellation.
      */
     public void cancel() {
-        Upload[] uploads = getUploads();
+        canceled = true;
+        Upload[] uploads = this.uploads;
         for (int i = 0; i < uploads.length; ++i) {
             uploads[i].cancel();
         }
-        if (listeners == null) {
+        UploadProcessListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
             return;
         }
-        UploadProcessEvent e = new UploadProcessEvent(this, null);
-        UploadProcessListener[] listenerArray = new UploadProcessListener[listeners.size()];
-        listeners.toArray(listenerArray);
-        for (int i = 0; i < listenerArray.length; ++i) {
-            listenerArray[i].uploadCancel(e);
+        for (int i = 0; i < listeners.length; ++i) {
+            listeners[i].uploadCancel(processEvent);
         }
     }
     
+    /**
+     * Commits data written to the staged file of an {@link Upload}, making it available to streams returned by
+     * {@link Upload#openLiveStream()}.  The data must have been written to the file before this method is invoked.
+     * 
+     * @param upload the <code>Upload</code>
+     * @param bytes the total number of bytes written to the staged file
+     * @see #stage(Upload, File)
+     */
+    public void commit(Upload upload, long bytes) {
+        ((UploadImpl) upload).setCommitted(bytes);
+    }
+    
     /**
      * Completes an individual {@link Upload}.
      * The specified {@link InputStream} and size information will be stored in the {@link Upload}.
@@ -287,10 +863,9 @@ public class UploadProcess {
      */
     public void complete(Upload upload, InputStream in, long size) {
         ((UploadImpl) upload).setSize(size);
-        if (upload.getStatus() == Upload.STATUS_IN_PROGRESS) {
-            ((UploadImpl) upload).setInputStream(in);
-            notifyComplete(upload);
-        } else {
+        ((UploadImpl) upload).setInputStream(in);
+        if (!notifyComplete(upload)) {
+            ((UploadImpl) upload).setInputStream(null);
             if (in != null) {
                 try {
                     in.close();
@@ -311,9 +886,9 @@ public class UploadProcess {
      */
     public void complete(Upload upload, File file, long size) {
         ((UploadImpl) upload).setSize(size);
-        if (upload.getStatus() == Upload.STATUS_IN_PROGRESS) {
-            ((UploadImpl) upload).setFile(file);
-            notifyComplete(upload);
+        ((UploadImpl) upload).setFile(file);
+        if (!notifyComplete(upload)) {
+            ((UploadImpl) upload).setFile(null);
         }
     }
     
@@ -327,6 +902,7 @@ public class UploadProcess {
     public void configure(Upload upload, String contentType, String fileName) {
         ((UploadImpl) upload).setContentType(contentType);
         ((UploadImpl) upload).setFileName(fileName);
+        publish();
     }
     
     /**
@@ -334,20 +910,93 @@ public class UploadProcess {
      * 
      * @return the upload instance
      */
-    public Upload createUpload() {
+    public synchronized Upload createUpload() {
         UploadImpl upload = new UploadImpl();
-        uploadList.add(upload);
-        uploads = null;
+        Upload[] newUploads = new Upload[uploads.length + 1];
+        System.arraycopy(uploads, 0, newUploads, 0, uploads.length);
+        newUploads[uploads.length] = upload;
+        uploads = newUploads;
+        publish();
         return upload;
     }
     
+    /**
+     * Copies the remaining content of a channel to another channel through a heap buffer.
+     * 
+     * @param source the channel to read from
+     * @param target the channel to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private static void copy(ReadableByteChannel source, WritableByteChannel target)
+    throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    /**
+     * Estimates the time required to transfer the specified number of bytes.
+     * 
+     * @param remaining the number of bytes remaining
+     * @param rate the transfer rate, in bytes per second
+     * @return the estimated time, in milliseconds, or -1 if no estimate is available
+     */
+    private static long estimateTimeRemaining(long remaining, double rate) {
+        if (remaining <= 0) {
+            return 0;
+        }
+        if (rate < 1) {
+            return -1;
+        }
+        return (long) (remaining * 1000 / rate);
+    }
+    
+    /**
+     * Updates an exponentially weighted moving average transfer rate with a new measurement.
+     * The weight of the measurement grows with the time it spans, such that the average is independent of the
+     * frequency of updates.
+     * 
+     * @param rate the current average rate, in bytes per second (0 if no measurement has yet been made)
+     * @param bytes the number of bytes transferred since the previous measurement
+     * @param elapsed the time elapsed since the previous measurement, in nanoseconds
+     * @return the updated average rate, in bytes per second
+     */
+    private static double updateRate(double rate, long bytes, long elapsed) {
+        if (elapsed <= 0 || bytes < 0) {
+            return rate;
+        }
+        double measuredRate = bytes * 1E9 / elapsed;
+        if (rate == 0) {
+            return measuredRate;
+        }
+        double weight = 1 - Math.exp(-elapsed / RATE_TIME_CONSTANT);
+        return rate + weight * (measuredRate - rate);
+    }
+    
     /**
      * Disposes of the <code>UploadProcess</code>, clearing all data.
+     * Temporary files of uploads which have not been transferred are deleted, and buffers obtained from
+     * {@link Upload#map()} or {@link Upload#mapSegments(int)} are dereferenced.  Mappings are only released once the 
+     * buffers are garbage collected, on some platforms (e.g., Windows) a mapped temporary file cannot be deleted 
+     * until then.
      */
     public void dispose() {
-        size = -1;
-        uploadList.clear();
-        uploads = null;
+        Upload[] uploads;
+        synchronized (this) {
+            uploads = this.uploads;
+            this.uploads = EMPTY_UPLOADS;
+        }
+        for (int i = 0; i < uploads.length; ++i) {
+            ((UploadImpl) uploads[i]).dispose();
+        }
+        size.set(-1);
+        progress.set(0);
+        publish();
     }
 
     /**
@@ -355,13 +1004,21 @@ public class UploadProcess {
      * 
      * @return the total progress, in bytes
      */
-    public synchronized long getProgress() {
-        getUploads();
-        long progress = 0;
-        for (int i = 0; i < uploads.length; ++i) {
-            progress += uploads[i].getProgress();
+    public long getProgress() {
+        return progress.get();
+    }
+    
+    /**
+     * Returns the estimated time remaining until all uploads are complete, based on the current transfer rate.
+     * 
+     * @return the estimated time remaining, in milliseconds, or -1 if no estimate is available
+     */
+    public long getEstimatedTimeRemaining() {
+        long size = getSize();
+        if (size == -1) {
+            return -1;
         }
-        return progress;
+        return estimateTimeRemaining(size - getProgress(), transferRate);
     }
     
     /**
@@ -373,15 +1030,29 @@ public class UploadProcess {
         return id;
     }
     
+    /**
+     * Returns the combined transfer rate of all uploads, as an exponentially weighted moving average.
+     * 
+     * @return the transfer rate, in bytes per second, or 0 if not yet measured
+     */
+    public long getTransferRate() {
+        return (long) transferRate;
+    }
+    
     /**
      * Returns the total upload size.
      */
     public long getSize() {
-        return size;
+        return size.get();
     }
     
+    /**
+     * Returns the first contained {@link Upload}.
+     * 
+     * @return the first upload, or null if the process contains no uploads
+     */
     public Upload getUpload() {
-        getUploads();
+        Upload[] uploads = this.uploads;
         return uploads.length == 0 ? null : uploads[0];
     }
     
@@ -390,11 +1061,7 @@ public class UploadProcess {
      * 
      * @return the contained uploads
      */
-    public synchronized Upload[] getUploads() {
-        if (uploads == null) {
-            uploads = new Upload[uploadList.size()];
-            uploadList.toArray(uploads);
-        }
+    public Upload[] getUploads() {
         return uploads;
     }
     
@@ -404,13 +1071,14 @@ public class UploadProcess {
      * @param size the combined size of all uploads
      */
     public void init(long size) {
-        if (this.size != -1) {
-            throw new IllegalStateException("UploadState already initialized.");
-        }
         if (size < 0) {
             throw new IllegalStateException("Invalid upload size.");
         }
-        this.size = size;
+        if (!this.size.compareAndSet(-1, size)) {
+            throw new IllegalStateException("UploadState already initialized.");
+        }
+        progressTime = System.nanoTime();
+        publish();
     }
     
     /**
@@ -428,8 +1096,8 @@ public class UploadProcess {
      * 
      * @return true if all uploads have been completed
      */
-    public synchronized boolean isComplete() {
-        getUploads();
+    public boolean isComplete() {
+        Upload[] uploads = this.uploads;
         for (int i = 0; i < uploads.length; ++i) {
             if (uploads[i].getStatus() == Upload.STATUS_IN_PROGRESS) {
                 return false;
@@ -438,64 +1106,127 @@ public class UploadProcess {
         return true;
     }
     
+    /**
+     * Determines if the upload process as a whole has been paused.
+     * Individual uploads may be paused independently, see {@link Upload#isPaused()}.
+     * 
+     * @return true if the upload process has been paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
     /**
      * Determines if the <code>UploadState</code> is initialized.
      * 
      * @return true if the <code>UploadState</code> has been initialized
      */
     public boolean isInitialized() {
-        return size != -1;
+        return size.get() != -1;
     }
     
     /**
-     * Notifies listeners that the upload has completed.
+     * Marks an in-progress upload as completed and notifies listeners.
      * 
      * @param upload the complete upload
+     * @return true if the upload was completed, false if it was no longer in progress 
      */
-    private void notifyComplete(Upload upload) {
-        ((UploadImpl) upload).setStatus(Upload.STATUS_COMPLETE);
+    private boolean notifyComplete(Upload upload) {
+        if (!((UploadImpl) upload).setStatus(Upload.STATUS_IN_PROGRESS, Upload.STATUS_COMPLETE)) {
+            return false;
+        }
         
-        if (listeners == null) {
-            return;
+        UploadProcessListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return true;
         }
-        UploadProcessEvent e = new UploadProcessEvent(this, upload);
-        UploadProcessListener[] listenerArray = new UploadProcessListener[listeners.size()];
-        listeners.toArray(listenerArray);
-        for (int i = 0; i < listenerArray.length; ++i) {
-            listenerArray[i].uploadComplete(e);
+        UploadProcessEvent e = ((UploadImpl) upload).event;
+        for (int i = 0; i < listeners.length; ++i) {
+            listeners[i].uploadComplete(e);
         }
+        return true;
+    }
+    
+    /**
+     * Pauses the <code>UploadProcess</code>, including uploads which have not yet started.
+     * The receiver stops reading the request until the process is resumed, such that the client is slowed by 
+     * network flow control rather than the transfer being aborted.
+     */
+    public void pause() {
+        paused = true;
+        publish();
     }
     
     /**
      * Sets the progress of a specific {@link Upload}.
-     * Reports upload progress to interested listeners. 
+     * Reports upload progress to interested listeners.  No objects are created by this method:
+     * {@link UploadProcessProgressListener}s are notified with primitive values, other listeners receive
+     * an event which is reused for every notification concerning the upload.
      * 
      * @param upload the {@link Upload}
      * @param bytesRead the number of bytes received
      */
     public void progress(Upload upload, long bytesRead) {
-        ((UploadImpl) upload).setProgress(bytesRead);
-        if (listeners == null) {
+        progress(upload, bytesRead, bytesRead - upload.getProgress());
+    }
+    
+    /**
+     * Sets the progress of a specific {@link Upload} whose data is transferred in a different size than it is stored,
+     * e.g., because it is compressed.  The progress of the upload is reported in stored bytes, while the progress of the
+     * process, and thus its transfer rate, is measured in transferred bytes, such that it corresponds to the 
+     * size with which the process was initialized.
+     * 
+     * @param upload the {@link Upload}
+     * @param bytesRead the number of bytes of the upload stored
+     * @param bytesTransferred the number of bytes transferred since the previous report
+     * @see #progress(Upload, long)
+     */
+    public void progress(Upload upload, long bytesRead, long bytesTransferred) {
+        UploadImpl uploadImpl = (UploadImpl) upload;
+        long bytes = bytesTransferred;
+        progress.addAndGet(bytes);
+        uploadImpl.setProgress(bytesRead);
+        long time = System.nanoTime();
+        transferRate = updateRate(transferRate, bytes, time - progressTime);
+        progressTime = time;
+        publish();
+        UploadProcessListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
             return;
         }
-        UploadProcessEvent e = new UploadProcessEvent(this, upload);
-        UploadProcessListener[] listenerArray = new UploadProcessListener[listeners.size()];
-        listeners.toArray(listenerArray);
-        for (int i = 0; i < listenerArray.length; ++i) {
-            listenerArray[i].uploadProgress(e);
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] instanceof UploadProcessProgressListener) {
+                ((UploadProcessProgressListener) listeners[i]).uploadProgress(this, upload, bytesRead);
+            } else {
+                listeners[i].uploadProgress(uploadImpl.event);
+            }
         }
     }
     
+    /**
+     * Marks the snapshot as stale after the state of the process has changed, such that it is rebuilt when next 
+     * retrieved.  Requires no locking and no allocation, thus may be invoked for every progress update.
+     */
+    private void publish() {
+        snapshotStale = true;
+    }
+    
     /**
      * Removes an {@link UploadProcessListener} from receiving notification of {@link UploadProcessEvent}s.
      * 
      * @param l the listener to remove.
      */
-    public void removeProcessListener(UploadProcessListener l) {
-        if (listeners == null) {
-            return;
+    public synchronized void removeProcessListener(UploadProcessListener l) {
+        UploadProcessListener[] oldListeners = listeners;
+        for (int i = 0; i < oldListeners.length; ++i) {
+            if (oldListeners[i].equals(l)) {
+                UploadProcessListener[] newListeners = new UploadProcessListener[oldListeners.length - 1];
+                System.arraycopy(oldListeners, 0, newListeners, 0, i);
+                System.arraycopy(oldListeners, i + 1, newListeners, i, newListeners.length - i);
+                listeners = newListeners;
+                return;
+            }
         }
-        listeners.remove(l);
     }
 
     /**
@@ -503,13 +1234,67 @@ public class UploadProcess {
      * 
      * @param status the new status
      */
-    public synchronized void setStatus(int status) {
-        Upload[] uploads = getUploads();
+    public void setStatus(int status) {
+        Upload[] uploads = this.uploads;
         for (int i = 0; i < uploads.length; ++i) {
-            if (uploads[i].getStatus() == Upload.STATUS_IN_PROGRESS) {
-                ((UploadImpl) uploads[i]).setStatus(status);
+            ((UploadImpl) uploads[i]).setStatus(Upload.STATUS_IN_PROGRESS, status);
+        }
+    }
+    
+    /**
+     * Sets the status of a specific {@link Upload}, if it is in progress.
+     * 
+     * @param upload the {@link Upload}
+     * @param status the new status
+     */
+    public void setStatus(Upload upload, int status) {
+        ((UploadImpl) upload).setStatus(Upload.STATUS_IN_PROGRESS, status);
+    }
+    
+    /**
+     * Resumes the <code>UploadProcess</code> after it has been paused.  Individually paused uploads remain paused.
+     */
+    public void resume() {
+        paused = false;
+        Upload[] uploads = this.uploads;
+        for (int i = 0; i < uploads.length; ++i) {
+            ((UploadImpl) uploads[i]).wakeWaiters();
+        }
+        publish();
+    }
+    
+    /**
+     * Returns an immutable snapshot of the state of the process and all of its uploads.
+     * The snapshot is rebuilt on retrieval if the state of the process has changed since it was last built, i.e.,
+     * after a progress update or after an upload has been created, configured, completed or canceled.  Otherwise,
+     * retrieving it requires no locking and no allocation.  The cost of building snapshots is thus borne by the 
+     * threads polling the process state, rather than by the thread receiving the uploads.
+     * 
+     * @return the current snapshot
+     */
+    public UploadProcessSnapshot snapshot() {
+        if (snapshotStale) {
+            synchronized (snapshotLock) {
+                if (snapshotStale) {
+                    // Cleared before reading the state, such that changes made while building mark the new snapshot stale.
+                    snapshotStale = false;
+                    snapshot = new UploadProcessSnapshot(this, uploads);
+                }
             }
         }
+        return snapshot;
+    }
+    
+    /**
+     * Declares the file to which the receiver is writing an {@link Upload} as it arrives, enabling it to be read 
+     * with {@link Upload#openLiveStream()} before it is complete.  Data written to the file is made available to 
+     * readers with {@link #commit(Upload, long)}.  The upload should be completed with the same file.
+     * 
+     * @param upload the <code>Upload</code>
+     * @param file the file being written
+     */
+    public void stage(Upload upload, File file) {
+        ((UploadImpl) upload).setStagedFile(file);
     }
     
     /**
@@ -518,14 +1303,13 @@ public class UploadProcess {
      * @param upload the {@link Upload}
      */
     public void start(Upload upload) {
-        if (listeners == null) {
+        UploadProcessListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
             return;
         }
-        UploadProcessEvent e = new UploadProcessEvent(this, upload);
-        UploadProcessListener[] listenerArray = new UploadProcessListener[listeners.size()];
-        listeners.toArray(listenerArray);
-        for (int i = 0; i < listenerArray.length; ++i) {
-            listenerArray[i].uploadStart(e);
+        UploadProcessEvent e = ((UploadImpl) upload).event;
+        for (int i = 0; i < listeners.length; ++i) {
+            listeners[i].uploadStart(e);
         }
     }
 
@@ -0,0 +1,293 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.model;
+
+/**
+ * An immutable view of the state of an {@link UploadProcess}.
+ * Snapshots are retrieved from any thread via {@link UploadProcess#snapshot()}, which builds a new snapshot only if
+ * the state of the process has changed since the previous one was built.
+ * <p>
+ * A snapshot does not change once built, such that values read from it are consistent with each other across calls.
+ * It is however built from individual volatile reads while the receiving thread may still be updating the process, 
+ * thus it is not an atomic view: the totals may, e.g., include a few bytes more than the sum of the entries.
+ */
+public final class UploadProcessSnapshot {
+    
+    /**
+     * An immutable view of the state of a single {@link Upload}.
+     */
+    public static final class Entry {
+        
+        private final String fileName;
+        private final String contentType;
+        private final int status;
+        private final long progress;
+        private final long size;
+        private final long transferRate;
+        private final boolean paused;
+        
+        /**
+         * Creates a new <code>Entry</code> describing the current state of an {@link Upload}.
+         * 
+         * @param upload the upload
+         */
+        Entry(Upload upload) {
+            super();
+            fileName = upload.getFileName();
+            contentType = upload.getContentType();
+            status = upload.getStatus();
+            progress = upload.getProgress();
+            size = upload.getSize();
+            transferRate = upload.getTransferRate();
+            paused = upload.isPaused();
+        }
+        
+        /**
+         * Returns the content type of the file.
+         * 
+         * @return the content type
+         * @see Upload#getContentType()
+         */
+        public String getContentType() {
+            return contentType;
+        }
+        
+        /**
+         * Returns the name of the file.
+         * 
+         * @return the file name
+         * @see Upload#getFileName()
+         */
+        public String getFileName() {
+            return fileName;
+        }
+        
+        /**
+         * Returns the number of bytes which had been uploaded.
+         * 
+         * @return the number of bytes uploaded
+         * @see Upload#getProgress()
+         */
+        public long getProgress() {
+            return progress;
+        }
+        
+        /**
+         * Returns the size of the file, in bytes.
+         * 
+         * @return the size
+         * @see Upload#getSize()
+         */
+        public long getSize() {
+            return size;
+        }
+        
+        /**
+         * Returns the upload status.
+         * 
+         * @return the status, one of the <code>STATUS_XXX</code> flags defined in {@link Upload}
+         * @see Upload#getStatus()
+         */
+        public int getStatus() {
+            return status;
+        }
+        
+        /**
+         * Returns the transfer rate of the upload.
+         * 
+         * @return the transfer rate, in bytes per second
+         * @see Upload#getTransferRate()
+         */
+        public long getTransferRate() {
+            return transferRate;
+        }
+        
+        /**
+         * Determines whether the upload was paused.
+         * 
+         * @return true if the upload was paused
+         * @see Upload#isPaused()
+         */
+        public boolean isPaused() {
+            return paused;
+        }
+    }
+    
+    private final boolean canceled;
+    private final boolean complete;
+    private final boolean paused;
+    private final long progress;
+    private final long size;
+    private final long transferRate;
+    private final long estimatedTimeRemaining;
+    private final Entry[] entries;
+    
+    /**
+     * Creates a new <code>UploadProcessSnapshot</code> describing the current state of an {@link UploadProcess}.
+     * 
+     * @param process the process
+     * @param uploads the uploads of the process
+     */
+    UploadProcessSnapshot(UploadProcess process, Upload[] uploads) {
+        super();
+        boolean complete = true;
+        boolean paused = true;
+        entries = new Entry[uploads.length];
+        for (int i = 0; i < uploads.length; ++i) {
+            entries[i] = new Entry(uploads[i]);
+            if (entries[i].getStatus() == Upload.STATUS_IN_PROGRESS) {
+                complete = false;
+                paused &= entries[i].isPaused();
+            }
+        }
+        this.complete = complete;
+        this.paused = process.isPaused() || (paused && !complete);
+        canceled = process.isCanceled();
+        progress = process.getProgress();
+        size = process.getSize();
+        transferRate = process.getTransferRate();
+        estimatedTimeRemaining = process.getEstimatedTimeRemaining();
+    }
+    
+    /**
+     * Creates a new <code>UploadProcessSnapshot</code> from previously recorded values, e.g., the state of a process 
+     * managed by another node.  The snapshot contains no entries for individual uploads.
+     * 
+     * @param canceled whether the process had been canceled
+     * @param complete whether all uploads had been completed
+     * @param paused whether the process had been paused
+     * @param progress the total progress, in bytes
+     * @param size the total size, in bytes, or -1 if not known
+     * @param transferRate the transfer rate, in bytes per second
+     * @param estimatedTimeRemaining the estimated time remaining, in milliseconds, or -1 if not known
+     */
+    public UploadProcessSnapshot(boolean canceled, boolean complete, boolean paused, long progress, long size, 
+            long transferRate, long estimatedTimeRemaining) {
+        super();
+        this.canceled = canceled;
+        this.complete = complete;
+        this.paused = paused;
+        this.progress = progress;
+        this.size = size;
+        this.transferRate = transferRate;
+        this.estimatedTimeRemaining = estimatedTimeRemaining;
+        entries = new Entry[0];
+    }
+    
+    /**
+     * Returns the number of uploads.
+     * 
+     * @return the number of uploads
+     */
+    public int getEntryCount() {
+        return entries.length;
+    }
+    
+    /**
+     * Returns the state of the upload at the specified index.
+     * 
+     * @param index the index
+     * @return the upload state
+     */
+    public Entry getEntry(int index) {
+        return entries[index];
+    }
+    
+    /**
+     * Returns the estimated time remaining until all uploads are complete.
+     * 
+     * @return the estimated time remaining, in milliseconds, or -1 if no estimate is available
+     * @see UploadProcess#getEstimatedTimeRemaining()
+     */
+    public long getEstimatedTimeRemaining() {
+        return estimatedTimeRemaining;
+    }
+    
+    /**
+     * Returns the total progress of all uploads.
+     * 
+     * @return the total progress, in bytes
+     * @see UploadProcess#getProgress()
+     */
+    public long getProgress() {
+        return progress;
+    }
+    
+    /**
+     * Returns the total upload size.
+     * 
+     * @return the total size, in bytes, or -1 if not yet known
+     * @see UploadProcess#getSize()
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Returns the combined transfer rate of all uploads.
+     * 
+     * @return the transfer rate, in bytes per second
+     * @see UploadProcess#getTransferRate()
+     */
+    public long getTransferRate() {
+        return transferRate;
+    }
+    
+    /**
+     * Determines if the upload process had been canceled.
+     * 
+     * @return true if the process had been canceled
+     * @see UploadProcess#isCanceled()
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+    
+    /**
+     * Determines if the upload process had been paused, i.e., the process itself was paused or all uploads in progress
+     * were paused.
+     * 
+     * @return true if the process had been paused
+     * @see UploadProcess#isPaused()
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Determines if all uploads had been completed, i.e., no uploads had a status of {@link Upload#STATUS_IN_PROGRESS}.
+     * 
+     * @return true if all uploads had been completed
+     * @see UploadProcess#isComplete()
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,69 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Abstract base class for <code>OutputStream</code>s which write uploaded data to a temporary file managed by the
+ * receiver, rather than to a commons-fileupload <code>FileItem</code>.
+ */
+public abstract class AbstractUploadOutputStream extends OutputStream {
+
+    /**
+     * Closes the stream and deletes the temporary file.  Invoked in place of <code>close()</code> when the upload
+     * has failed.
+     */
+    public abstract void discard();
+
+    /**
+     * Returns the temporary file to which data has been written.
+     * 
+     * @return the file
+     */
+    public abstract File getFile();
+    
+    /**
+     * Returns the number of bytes written.
+     * 
+     * @return the number of bytes written
+     */
+    public abstract long getSize();
+    
+    /**
+     * @see java.io.OutputStream#write(int)
+     */
+    public void write(int b) 
+    throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+}
@@ -35,6 +35,7 @@ import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides throttled stream copying.
@@ -61,7 +62,7 @@ public class BandwidthAllocator {
         /**
          * Provides notification of transfered data.
          * 
-         * @param bytes the cumulative amount of data transferred
+         * @param bytes the amount of data transferred since the previous notification
          */
         public void bytesTransferred(long bytes);
         
@@ -74,6 +75,29 @@ public class BandwidthAllocator {
         public boolean isAborted();
     }
     
+    /**
+     * A {@link Tracker} which may additionally pause the transfer.
+     * The bandwidth allocation of a paused transfer is released, such that it is available to other transfers.
+     */
+    public static interface PausableTracker extends Tracker {
+        
+        /**
+         * Blocks until the transfer is no longer paused.
+         * 
+         * @throws IOException if the transfer cannot be resumed, e.g., because the waiting thread was interrupted
+         */
+        public void awaitResume()
+        throws IOException;
+        
+        /**
+         * Determines whether the transfer is paused.  
+         * If true is returned, no further data will be read until {@link #awaitResume()} has returned.
+         * 
+         * @return true if the transfer is paused
+         */
+        public boolean isPaused();
+    }
+    
     private static final int BUFFER_SIZE = 4096;
     
     /**
@@ -94,17 +118,22 @@ public class BandwidthAllocator {
     /**
      * Flag indicating whether throttling is enabled.
      */
-    private boolean throttling = false;
+    private volatile boolean throttling = false;
     
     /**
      * The maximum number of bytes per second which should be transmitted.
      */
-    private int bandwidth;
+    private volatile int bandwidth;
     
     /**
      * The maximum number of bytes per interval should be transmitted.
      */
-    private int bytesPerInterval;
+    private volatile int bytesPerInterval;
+    
+    /**
+     * The total time transfers have waited for bandwidth to be allocated, in nanoseconds.
+     */
+    private final AtomicLong waitTime = new AtomicLong();
     
     /**
      * Creates a new <code>BandwidthAllocator</code> with throttling disabled.
@@ -148,6 +177,7 @@ public class BandwidthAllocator {
     
     /**
      * Reads from an {@link InputStream} writing retrieved information to an {@link OutputStream}.
+     * If the tracker is a {@link PausableTracker}, reading is suspended while it is paused.
      * 
      * @param tracker a {@link Tracker} which can be used to observe progress (may be null if monitoring not desired)
      * @param input the {@link InputStream} to read from
@@ -169,17 +199,38 @@ public class BandwidthAllocator {
                 }
                 if (throttling) {
                     handle.remainingBytes -= n;
-                    while (handle.remainingBytes <= 0) {
-                        allocate();
-                        if (handle.remainingBytes <= 0) {
-                            try {
-                                Thread.sleep(5);
-                            } catch (InterruptedException ex) {
-                                throw new RuntimeException(ex);
+                    if (handle.remainingBytes <= 0) {
+                        long waitStartTime = System.nanoTime();
+                        try {
+                            while (handle.remainingBytes <= 0) {
+                                if (tracker.isAborted()) {
+                                    return;
+                                }
+                                allocate();
+                                if (handle.remainingBytes <= 0) {
+                                    try {
+                                        Thread.sleep(5);
+                                    } catch (InterruptedException ex) {
+                                        throw new RuntimeException(ex);
+                                    }
+                                }
                             }
+                        } finally {
+                            waitTime.addAndGet(System.nanoTime() - waitStartTime);
                         }
                     }
                 }
+                if (tracker instanceof PausableTracker && ((PausableTracker) tracker).isPaused()) {
+                    remove(handle);
+                    try {
+                        ((PausableTracker) tracker).awaitResume();
+                    } finally {
+                        handle = create();
+                    }
+                    if (tracker.isAborted()) {
+                        return;
+                    }
+                }
             }
         } finally {
             remove(handle);
@@ -206,6 +257,15 @@ public class BandwidthAllocator {
         return bandwidth;
     }
     
+    /**
+     * Returns the total time transfers have waited for bandwidth to be allocated.
+     * 
+     * @return the wait time, in nanoseconds
+     */
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+    
     /**
      * Determines whether throttling is currently enabled.
      * 
@@ -0,0 +1,62 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+/**
+ * Inspects the beginning of an upload as it arrives, allowing uploads of unacceptable content to be rejected before
+ * the remainder is transferred.  Rejected uploads are marked with 
+ * {@link nextapp.echo.filetransfer.model.Upload#STATUS_ERROR_CONTENT} and the request is terminated.  Uploads of the
+ * request completed before the rejected upload are unaffected, any further uploads of the request are not received.
+ * <p>
+ * Implementations must be thread-safe, a single validator is used for all concurrently received uploads.
+ */
+public interface ContentValidator {
+    
+    /**
+     * Returns the number of bytes at the beginning of each upload which should be provided to 
+     * {@link #validate(String, String, byte[], int)}.
+     * 
+     * @return the number of bytes
+     */
+    public int getInspectionLength();
+    
+    /**
+     * Determines whether an upload should be accepted, based on its declared properties and the beginning of its 
+     * content.
+     * 
+     * @param fileName the file name provided by the client, which may be null
+     * @param contentType the content type declared by the client, which may be null
+     * @param data the first bytes of the upload
+     * @param length the number of valid bytes in <code>data</code>, less than the inspection length only if the upload 
+     *        is shorter
+     * @return true if the upload should be accepted, false if it should be rejected
+     */
+    public boolean validate(String fileName, String contentType, byte[] data, int length);
+}
@@ -0,0 +1,197 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Request wrapper decoding a request body sent with a <code>gzip</code> or <code>deflate</code> 
+ * <code>Content-Encoding</code>.  The wrapped request provides the decoded body, without a content length or 
+ * content encoding.  The number of encoded bytes read from the original request is available from 
+ * {@link #getEncodedInput()}.  Bodies without a content encoding (or with the <code>identity</code> encoding) are
+ * provided unchanged, their bytes are counted nonetheless.
+ */
+class DecodingRequestWrapper extends HttpServletRequestWrapper {
+    
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * Determines whether a content encoding is supported.
+     * 
+     * @param contentEncoding the value of the <code>Content-Encoding</code> header
+     * @return true if the encoding is supported
+     */
+    static boolean isSupported(String contentEncoding) {
+        return isIdentity(contentEncoding) || "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)
+                || "deflate".equalsIgnoreCase(contentEncoding);
+    }
+    
+    /**
+     * Determines whether a content encoding leaves the body unchanged.
+     * 
+     * @param contentEncoding the value of the <code>Content-Encoding</code> header, which may be null
+     * @return true if the body is not encoded
+     */
+    private static boolean isIdentity(String contentEncoding) {
+        return contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding);
+    }
+    
+    /**
+     * Creates a stream inflating <code>deflate</code> encoded data.  Data is expected in the zlib format, as specified
+     * by HTTP, raw deflate data as sent by some clients is accepted as well.
+     * 
+     * @param in the encoded stream
+     * @return the decoded stream
+     * @throws IOException if an I/O error occurs
+     */
+    private static InputStream inflate(InputStream in) 
+    throws IOException {
+        PushbackInputStream pushbackIn = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int length = 0;
+        int n;
+        while (length < header.length && (n = pushbackIn.read(header, length, header.length - length)) != -1) {
+            length += n;
+        }
+        pushbackIn.unread(header, 0, length);
+        int cmf = header[0] & 0xff;
+        boolean zlib = length == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) | (header[1] & 0xff)) % 31 == 0;
+        return new InflaterInputStream(pushbackIn, new Inflater(!zlib), BUFFER_SIZE);
+    }
+    
+    private CountingInputStream encodedInput;
+    private ServletInputStream decodedInput;
+    private boolean decoding;
+    
+    /**
+     * Creates a new <code>DecodingRequestWrapper</code>.
+     * 
+     * @param request the request whose body is encoded
+     * @throws IOException if the body cannot be read or its encoding is not supported
+     */
+    DecodingRequestWrapper(HttpServletRequest request) 
+    throws IOException {
+        super(request);
+        String contentEncoding = request.getHeader(CONTENT_ENCODING);
+        if (!isSupported(contentEncoding)) {
+            throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+        encodedInput = new CountingInputStream(request.getInputStream());
+        decoding = !isIdentity(contentEncoding);
+        final InputStream in;
+        if (!decoding) {
+            in = encodedInput;
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            in = inflate(encodedInput);
+        } else {
+            in = new GZIPInputStream(encodedInput, BUFFER_SIZE);
+        }
+        decodedInput = new ServletInputStream() {
+            
+            /**
+             * @see java.io.InputStream#available()
+             */
+            public int available() 
+            throws IOException {
+                return in.available();
+            }
+            
+            /**
+             * @see java.io.InputStream#close()
+             */
+            public void close() 
+            throws IOException {
+                in.close();
+            }
+            
+            /**
+             * @see java.io.InputStream#read()
+             */
+            public int read() 
+            throws IOException {
+                return in.read();
+            }
+            
+            /**
+             * @see java.io.InputStream#read(byte[], int, int)
+             */
+            public int read(byte[] b, int off, int len) 
+            throws IOException {
+                return in.read(b, off, len);
+            }
+        };
+    }
+    
+    /**
+     * @see javax.servlet.ServletRequestWrapper#getContentLength()
+     */
+    public int getContentLength() {
+        return decoding ? -1 : super.getContentLength();
+    }
+    
+    /**
+     * Returns the stream from which the encoded body is read, counting the bytes read.
+     * 
+     * @return the encoded stream
+     */
+    CountingInputStream getEncodedInput() {
+        return encodedInput;
+    }
+    
+    /**
+     * @see javax.servlet.http.HttpServletRequestWrapper#getHeader(java.lang.String)
+     */
+    public String getHeader(String name) {
+        if (decoding && (CONTENT_LENGTH.equalsIgnoreCase(name) || CONTENT_ENCODING.equalsIgnoreCase(name))) {
+            return null;
+        }
+        return super.getHeader(name);
+    }
+    
+    /**
+     * @see javax.servlet.ServletRequestWrapper#getInputStream()
+     */
+    public ServletInputStream getInputStream() {
+        return decodedInput;
+    }
+}
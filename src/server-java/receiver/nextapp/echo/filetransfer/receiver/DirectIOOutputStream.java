@@ -0,0 +1,360 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An <code>OutputStream</code> which writes data beyond a size threshold to a temporary file using direct I/O,
+ * bypassing the operating system's page cache.  Large uploads thus do not evict data cached for the rest of the 
+ * server.
+ * <p>
+ * Data up to the threshold is written normally.  Once the threshold has been reached (at a file offset aligned to the 
+ * file system's block size), the file is reopened for direct I/O and written in full blocks from pooled, aligned 
+ * buffers.  The final partial block is written normally.  Direct I/O requires a Java 10 or later runtime 
+ * (<code>com.sun.nio.file.ExtendedOpenOption.DIRECT</code>) and a file system which supports it; in all other cases 
+ * the stream silently continues to write normally.
+ */
+public class DirectIOOutputStream extends AbstractUploadOutputStream {
+    
+    /**
+     * Alignment of pooled buffers, must be a multiple of the file system block size for direct I/O to be used.
+     */
+    private static final int BUFFER_ALIGNMENT = 4096;
+    
+    /**
+     * Size of pooled buffers.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    
+    /**
+     * Maximum number of buffers retained in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 16;
+    
+    /**
+     * The <code>ExtendedOpenOption.DIRECT</code> open option, or null if not supported by the runtime.
+     */
+    private static final OpenOption DIRECT;
+    
+    /**
+     * The <code>ByteBuffer.alignedSlice(int)</code> method, or null if not supported by the runtime.
+     */
+    private static final Method ALIGNED_SLICE;
+    
+    /**
+     * The <code>FileStore.getBlockSize()</code> method, or null if not supported by the runtime.
+     */
+    private static final Method GET_BLOCK_SIZE;
+    
+    /**
+     * Pool of aligned direct buffers.
+     */
+    private static final List bufferPool = new ArrayList();
+    
+    static {
+        OpenOption direct = null;
+        Method alignedSlice = null;
+        Method getBlockSize = null;
+        try {
+            direct = (OpenOption) Class.forName("com.sun.nio.file.ExtendedOpenOption").getField("DIRECT").get(null);
+            alignedSlice = ByteBuffer.class.getMethod("alignedSlice", new Class[] { Integer.TYPE });
+            getBlockSize = java.nio.file.FileStore.class.getMethod("getBlockSize", new Class[0]);
+        } catch (Exception ex) {
+            direct = null;
+        }
+        DIRECT = direct;
+        ALIGNED_SLICE = alignedSlice;
+        GET_BLOCK_SIZE = getBlockSize;
+    }
+    
+    /**
+     * Retrieves an aligned buffer from the pool, allocating one if the pool is empty.
+     * 
+     * @return the buffer
+     * @throws IOException if an aligned buffer cannot be created
+     */
+    private static ByteBuffer acquireBuffer() 
+    throws IOException {
+        synchronized (bufferPool) {
+            if (bufferPool.size() > 0) {
+                return (ByteBuffer) bufferPool.remove(bufferPool.size() - 1);
+            }
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE + BUFFER_ALIGNMENT);
+            return (ByteBuffer) ALIGNED_SLICE.invoke(buffer, new Object[] { new Integer(BUFFER_ALIGNMENT) });
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+    
+    /**
+     * Returns a buffer to the pool.
+     * 
+     * @param buffer the buffer
+     */
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.add(buffer);
+            }
+        }
+    }
+    
+    /**
+     * The temporary file.
+     */
+    private File file;
+    
+    /**
+     * The number of bytes which are written normally before switching to direct I/O.
+     */
+    private long threshold;
+    
+    /**
+     * The file system block size, or 0 if direct I/O is not available.
+     */
+    private int blockSize;
+    
+    /**
+     * Stream used to write data normally, null once direct I/O is in use.
+     */
+    private FileOutputStream out;
+    
+    /**
+     * Channel used to write data using direct I/O, null until the threshold has been reached.
+     */
+    private FileChannel directChannel;
+    
+    /**
+     * Aligned buffer used to accumulate full blocks for direct I/O.
+     */
+    private ByteBuffer buffer;
+    
+    /**
+     * The number of bytes written.
+     */
+    private long size = 0;
+    
+    /**
+     * Creates a new <code>DirectIOOutputStream</code>.
+     * 
+     * @param location the directory in which the temporary file should be created
+     * @param threshold the number of bytes to write normally before switching to direct I/O
+     * @throws IOException if the temporary file cannot be created
+     */
+    public DirectIOOutputStream(File location, long threshold) 
+    throws IOException {
+        super();
+        this.threshold = threshold;
+        file = File.createTempFile("upload_", ".tmp", location);
+        out = new FileOutputStream(file);
+        blockSize = getBlockSize(file);
+    }
+    
+    /**
+     * @see java.io.OutputStream#close()
+     */
+    public void close() 
+    throws IOException {
+        if (directChannel == null) {
+            out.close();
+            return;
+        }
+        try {
+            buffer.flip();
+            int tailLength = buffer.remaining() % blockSize;
+            buffer.limit(buffer.limit() - tailLength);
+            while (buffer.hasRemaining()) {
+                directChannel.write(buffer);
+            }
+            if (tailLength > 0) {
+                // Direct I/O can only write full blocks, the final partial block is appended normally.
+                buffer.limit(buffer.limit() + tailLength);
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } finally {
+                    channel.close();
+                }
+            }
+        } finally {
+            directChannel.close();
+            releaseBuffer(buffer);
+            buffer = null;
+            directChannel = null;
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#discard()
+     */
+    public void discard() {
+        try {
+            if (directChannel == null) {
+                out.close();
+            } else {
+                directChannel.close();
+                releaseBuffer(buffer);
+                buffer = null;
+                directChannel = null;
+            }
+        } catch (IOException ex) {
+            // Do nothing, file is being discarded.
+        }
+        file.delete();
+    }
+    
+    /**
+     * Determines the block size of the file system containing a file, if direct I/O is possible.
+     * 
+     * @param file the file
+     * @return the block size, or 0 if direct I/O is not possible
+     */
+    private int getBlockSize(File file) {
+        if (DIRECT == null) {
+            return 0;
+        }
+        try {
+            long blockSize = ((Long) GET_BLOCK_SIZE.invoke(Files.getFileStore(file.toPath()), new Object[0])).longValue();
+            if (blockSize <= 0 || blockSize > BUFFER_ALIGNMENT || BUFFER_ALIGNMENT % blockSize != 0) {
+                return 0;
+            }
+            return (int) blockSize;
+        } catch (Exception ex) {
+            return 0;
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getFile()
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getSize()
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Determines whether data is currently being written using direct I/O.
+     * 
+     * @return true if direct I/O is in use
+     */
+    public boolean isDirect() {
+        return directChannel != null;
+    }
+    
+    /**
+     * Attempts to reopen the file for direct I/O.  Direct I/O is disabled for this stream if the file cannot be
+     * reopened, e.g., because the file system does not support it.
+     */
+    private void openDirect() {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), new OpenOption[] { StandardOpenOption.WRITE, DIRECT });
+            channel.position(size);
+            buffer = acquireBuffer();
+        } catch (Exception ex) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    // Do nothing, falling back to normal I/O.
+                }
+            }
+            blockSize = 0;
+            return;
+        }
+        directChannel = channel;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // Do nothing, all data has been written and will be visible to the direct channel.
+        }
+        out = null;
+    }
+    
+    /**
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) 
+    throws IOException {
+        while (len > 0) {
+            int count;
+            if (directChannel == null) {
+                if (blockSize > 0 && size >= threshold && size % blockSize == 0) {
+                    openDirect();
+                    continue;
+                }
+                count = len;
+                if (blockSize > 0) {
+                    // Stop at the first block boundary past the threshold, such that direct I/O begins at an aligned offset.
+                    long boundary = (Math.max(threshold, size) + blockSize - 1) / blockSize * blockSize;
+                    if (boundary > size) {
+                        count = (int) Math.min(len, boundary - size);
+                    }
+                }
+                out.write(b, off, count);
+            } else {
+                count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        directChannel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            size += count;
+            off += count;
+            len -= count;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A size-limited storage area on a fast file system (e.g., a tmpfs mount), to which uploads are written before
+ * spilling over to the regular disk cache.  A single instance should be shared by all processors writing to the
+ * same location, such that the capacity is enforced across all uploads.
+ * <p>
+ * Space is accounted per file.  Files which have since been deleted or moved (e.g., by 
+ * {@link nextapp.echo.filetransfer.model.UploadProcess#dispose()}) are reclaimed lazily when the tier runs out of space.
+ */
+public class FastStorageTier {
+    
+    /**
+     * The directory in which files are stored.
+     */
+    private File location;
+    
+    /**
+     * The maximum number of bytes which may be stored in the tier.
+     */
+    private long capacity;
+    
+    /**
+     * The number of bytes currently accounted to files in the tier.
+     */
+    private long used = 0;
+    
+    /**
+     * Mapping between <code>File</code>s stored in the tier and the number of bytes accounted to them (<code>Long</code>s).
+     */
+    private Map files = new HashMap();
+    
+    /**
+     * Creates a new <code>FastStorageTier</code>.
+     * 
+     * @param location the directory in which files should be stored
+     * @param capacity the maximum number of bytes which may be stored in the tier
+     */
+    public FastStorageTier(File location, long capacity) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.location = location;
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Returns the maximum number of bytes which may be stored in the tier.
+     * 
+     * @return the capacity, in bytes
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the directory in which files are stored.
+     * 
+     * @return the location
+     */
+    public File getLocation() {
+        return location;
+    }
+    
+    /**
+     * Returns the number of bytes currently accounted to files in the tier.
+     * This value may include files which have been deleted but not yet reclaimed.
+     * 
+     * @return the number of bytes used
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+    
+    /**
+     * Removes accounting of files which no longer exist.
+     */
+    private void reclaim() {
+        Iterator it = files.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if (!((File) entry.getKey()).exists()) {
+                used -= ((Long) entry.getValue()).longValue();
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Releases all space accounted to a file, e.g., because it has been spilled to disk.
+     * 
+     * @param file the file
+     */
+    public synchronized void release(File file) {
+        Long bytes = (Long) files.remove(file);
+        if (bytes != null) {
+            used -= bytes.longValue();
+        }
+    }
+    
+    /**
+     * Attempts to reserve space for additional data to be written to a file.
+     * 
+     * @param file the file
+     * @param bytes the number of additional bytes
+     * @return true if the space was reserved, false if the tier does not have sufficient capacity
+     */
+    public synchronized boolean reserve(File file, long bytes) {
+        if (used + bytes > capacity) {
+            reclaim();
+            if (used + bytes > capacity) {
+                return false;
+            }
+        }
+        Long accounted = (Long) files.get(file);
+        files.put(file, new Long(accounted == null ? bytes : accounted.longValue() + bytes));
+        used += bytes;
+        return true;
+    }
+    
+    /**
+     * Sets the number of bytes accounted to a file to its actual size, returning any excess reservation to the tier.
+     * 
+     * @param file the file
+     * @param bytes the actual size of the file
+     */
+    public synchronized void trim(File file, long bytes) {
+        Long accounted = (Long) files.get(file);
+        if (accounted == null) {
+            return;
+        }
+        used -= accounted.longValue() - bytes;
+        files.put(file, new Long(bytes));
+    }
+}
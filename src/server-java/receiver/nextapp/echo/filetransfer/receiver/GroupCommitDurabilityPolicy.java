@@ -0,0 +1,214 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DurabilityPolicy} which batches the synchronization of uploads completing within the same interval.
+ * The first upload to complete in an interval synchronizes the data of all files of the batch on behalf of every 
+ * waiting upload, then synchronizes each distinct containing directory once, rather than once per file.  
+ * <p>
+ * The first upload waits for the interval to elapse before committing only if the previous batch contained more than
+ * one file, i.e., while uploads are completing concurrently.  An isolated upload is committed immediately.  Uploads 
+ * completing while a batch is being committed form the next batch.
+ * <p>
+ * A single instance should be shared by all processors, such that uploads of all users are batched together.
+ */
+public class GroupCommitDurabilityPolicy 
+implements DurabilityPolicy {
+    
+    /**
+     * A group of files which are committed together.
+     */
+    private static class Batch {
+        
+        /**
+         * The <code>File</code>s to commit.
+         */
+        private List files = new ArrayList();
+        
+        /**
+         * Mapping between <code>File</code>s which failed to commit and the resulting <code>IOException</code>s.
+         */
+        private Map failures = new HashMap();
+        
+        /**
+         * Flag indicating whether the batch has been committed.
+         */
+        private boolean committed = false;
+    }
+    
+    /**
+     * The interval over which commits are batched, in milliseconds.
+     */
+    private int interval;
+    
+    /**
+     * The batch currently accepting files, or null if no batch is open.
+     */
+    private Batch openBatch;
+    
+    /**
+     * Flag indicating whether the most recently committed batch contained more than one file.
+     */
+    private boolean lastBatchShared = false;
+    
+    /**
+     * Creates a new <code>GroupCommitDurabilityPolicy</code>.
+     * 
+     * @param interval the interval over which commits are batched, in milliseconds
+     */
+    public GroupCommitDurabilityPolicy(int interval) {
+        super();
+        if (interval < 0) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        this.interval = interval;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.DurabilityPolicy#commit(java.io.File)
+     */
+    public void commit(File file) 
+    throws IOException {
+        Batch batch;
+        boolean leader;
+        synchronized (this) {
+            leader = openBatch == null;
+            if (leader) {
+                openBatch = new Batch();
+            }
+            batch = openBatch;
+            batch.files.add(file);
+        }
+        
+        if (leader) {
+            boolean wait;
+            synchronized (this) {
+                wait = lastBatchShared;
+            }
+            if (wait) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException ex) {
+                    // Commit immediately, other uploads depend on this batch being committed.
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                openBatch = null;
+                lastBatchShared = batch.files.size() > 1;
+            }
+            boolean synced = false;
+            try {
+                // Mapping between directories and the files of the batch they contain.
+                Map directories = new LinkedHashMap();
+                for (int i = 0; i < batch.files.size(); ++i) {
+                    File batchFile = (File) batch.files.get(i);
+                    try {
+                        SyncDurabilityPolicy.syncData(batchFile);
+                        File directory = batchFile.getAbsoluteFile().getParentFile();
+                        if (directory != null) {
+                            List directoryFiles = (List) directories.get(directory);
+                            if (directoryFiles == null) {
+                                directoryFiles = new ArrayList();
+                                directories.put(directory, directoryFiles);
+                            }
+                            directoryFiles.add(batchFile);
+                        }
+                    } catch (IOException ex) {
+                        batch.failures.put(batchFile, ex);
+                    }
+                }
+                Iterator it = directories.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry entry = (Map.Entry) it.next();
+                    try {
+                        SyncDurabilityPolicy.syncDirectory((File) entry.getKey());
+                    } catch (IOException ex) {
+                        List directoryFiles = (List) entry.getValue();
+                        for (int i = 0; i < directoryFiles.size(); ++i) {
+                            batch.failures.put(directoryFiles.get(i), ex);
+                        }
+                    }
+                }
+                synced = true;
+            } finally {
+                if (!synced) {
+                    // Leader failed unexpectedly, waiting uploads must not assume their files were committed.
+                    IOException ex = new IOException("Group commit failed.");
+                    for (int i = 0; i < batch.files.size(); ++i) {
+                        if (!batch.failures.containsKey(batch.files.get(i))) {
+                            batch.failures.put(batch.files.get(i), ex);
+                        }
+                    }
+                }
+                synchronized (batch) {
+                    batch.committed = true;
+                    batch.notifyAll();
+                }
+            }
+        } else {
+            synchronized (batch) {
+                while (!batch.committed) {
+                    try {
+                        batch.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while awaiting group commit.");
+                    }
+                }
+            }
+        }
+        
+        IOException failure = (IOException) batch.failures.get(file);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Returns the interval over which commits are batched, in milliseconds.
+     * 
+     * @return the interval
+     */
+    public int getInterval() {
+        return interval;
+    }
+}
@@ -29,8 +29,21 @@
 
 package nextapp.echo.filetransfer.receiver;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -48,10 +61,15 @@ import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CountingInputStream;
 
 /**
  * {@link UploadProcessor} implementation that uses the Jakarta Commons FileUpload library.
  * <p>
+ * Request bodies sent with a <code>gzip</code> or <code>deflate</code> <code>Content-Encoding</code> are decoded as
+ * they are received.  Uploads are then stored, limited and reported in decoded bytes, while the progress of the 
+ * process, quotas and bandwidth statistics are measured in encoded bytes transferred.
+ * <p>
  * See http://jakarta.apache.org/commons/fileupload for details.
  */
 public class JakartaUploadProcessor 
@@ -60,6 +78,8 @@ implements UploadProcessor {
     private static final int DEFAULT_MEMORY_CACHE_THRESHOLD = 16 * 1024; // 16 KB
     private static final File DEFAULT_TEMP_LOCATION = new File(System.getProperty("java.io.tmpdir", "."));
     private static final int DEFAULT_UPLOAD_SIZE_LIMIT  = 20 * 1024 * 1024; // 20 MB
+    private static final long DEFAULT_FAST_STORAGE_THRESHOLD = 8 * 1024 * 1024; // 8 MB
+    private static final String DEFAULT_ENTRY_CONTENT_TYPE = "application/octet-stream";
 
     /**
      * Constant indicating that there is no size limit.
@@ -67,14 +87,71 @@ implements UploadProcessor {
     public static final short NO_SIZE_LIMIT = -1;
 
     /**
-     * Lowest interval at which {@link UploadProcess#progress} should be invoked.
+     * Constant indicating that direct I/O should not be used.
+     */
+    public static final short NO_DIRECT_IO = -1;
+
+    /**
+     * Constant indicating that there is no idle timeout.
+     */
+    public static final short NO_IDLE_TIMEOUT = -1;
+
+    /**
+     * Constant indicating that there is no minimum transfer rate.
+     */
+    public static final short NO_MINIMUM_RATE = -1;
+    
+    private static final long DEFAULT_MINIMUM_RATE_INTERVAL = 30 * 1000; // 30 seconds
+    
+    /**
+     * Interval at which in-progress requests are checked for idle timeouts and minimum transfer rates, in milliseconds.
+     */
+    private static final long WATCHDOG_INTERVAL = 1000;
+
+    /**
+     * Lowest interval at which {@link UploadProcess#progress} should be invoked, in nanoseconds.
      */
-    private static final int PROGRESS_INTERVAL = 250;
+    private static final long PROGRESS_INTERVAL = 250L * 1000 * 1000;
     
     /**
      * Global bandwidth allocator.
      */
     private static final BandwidthAllocator allocator = new BandwidthAllocator(3 * 1024 * 1024);
+    
+    /**
+     * Allocators of bandwidth classes, mapping class names to {@link BandwidthAllocator}s.
+     */
+    private static final ConcurrentMap bandwidthClassAllocators = new ConcurrentHashMap();
+    
+    /**
+     * Timer checking in-progress requests for idle timeouts and minimum transfer rates, created on first use.
+     * Receiving threads may be blocked reading from a stalled client, thus the checks cannot be made by them.
+     */
+    private static Timer watchdog;
+
+    /**
+     * Schedules a watchdog task for periodic execution, creating the watchdog timer if required.
+     * 
+     * @param task the task
+     */
+    private static synchronized void scheduleWatchdogTask(TimerTask task) {
+        if (watchdog == null) {
+            watchdog = new Timer("JakartaUploadProcessor Watchdog", true);
+        }
+        watchdog.schedule(task, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL);
+    }
+    
+    /**
+     * Stops the watchdog timer, e.g., when the web application is undeployed, such that its thread does not retain the
+     * application's class loader.  Requests in progress are no longer checked for timeouts, the timer is recreated
+     * if further requests are received.
+     */
+    public static synchronized void shutdown() {
+        if (watchdog != null) {
+            watchdog.cancel();
+            watchdog = null;
+        }
+    }
 
     /**
      * Returns the collective bandwidth (in bytes per second) available for all file transfers, for all users combined.
@@ -90,6 +167,61 @@ implements UploadProcessor {
         }
     }
     
+    /**
+     * Returns the collective bandwidth (in bytes per second) available for file transfers of a bandwidth class.
+     * A value of zero indicates bandwidth is not throttled.
+     * 
+     * @param bandwidthClass the name of the bandwidth class, or null for the global bandwidth
+     * @return the bandwidth
+     * @see #getBandwidthClass()
+     */
+    public static int getBandwidth(String bandwidthClass) {
+        BandwidthAllocator allocator = getAllocator(bandwidthClass);
+        if (allocator.isThrottling()) {
+            return allocator.getBandwidth();
+        } else {
+            return 0;
+        }
+    }
+    
+    /**
+     * Returns the {@link BandwidthAllocator} of a bandwidth class, creating it if necessary.
+     * Created allocators do not throttle bandwidth until it is set.
+     * 
+     * @param bandwidthClass the name of the bandwidth class, or null for the global allocator
+     * @return the allocator
+     */
+    private static BandwidthAllocator getAllocator(String bandwidthClass) {
+        if (bandwidthClass == null) {
+            return allocator;
+        }
+        BandwidthAllocator classAllocator = (BandwidthAllocator) bandwidthClassAllocators.get(bandwidthClass);
+        if (classAllocator == null) {
+            classAllocator = new BandwidthAllocator();
+            BandwidthAllocator existingAllocator = (BandwidthAllocator) bandwidthClassAllocators.putIfAbsent(
+                    bandwidthClass, classAllocator);
+            if (existingAllocator != null) {
+                classAllocator = existingAllocator;
+            }
+        }
+        return classAllocator;
+    }
+    
+    /**
+     * Returns the total time transfers have waited for bandwidth to be allocated, for the global bandwidth and all 
+     * bandwidth classes.
+     * 
+     * @return the wait time, in nanoseconds
+     */
+    public static long getAllocatorWaitTime() {
+        long waitTime = allocator.getWaitTime();
+        Iterator it = bandwidthClassAllocators.values().iterator();
+        while (it.hasNext()) {
+            waitTime += ((BandwidthAllocator) it.next()).getWaitTime();
+        }
+        return waitTime;
+    }
+    
     /**
      * Sets the collective bandwidth (in bytes per second) available for all file transfers, for all users combined.
      * A value of zero indicates bandwidth is not throttled.
@@ -107,41 +239,149 @@ implements UploadProcessor {
         }
     }
     
+    /**
+     * Sets the collective bandwidth (in bytes per second) available for file transfers of a bandwidth class, for all 
+     * users combined.  Transfers of a bandwidth class are not limited by the global bandwidth.
+     * A value of zero indicates bandwidth is not throttled.
+     * 
+     * @param bandwidthClass the name of the bandwidth class, or null for the global bandwidth
+     * @param newValue the new bandwidth setting
+     * @see #getBandwidthClass()
+     */
+    public static void setBandwidth(String bandwidthClass, int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Invalid bandwidth value.");
+        }
+        BandwidthAllocator allocator = getAllocator(bandwidthClass);
+        if (newValue == 0) {
+            allocator.setThrottling(false);
+        } else {
+            allocator.setThrottling(true);
+            allocator.setBandwidth(newValue);
+        }
+    }
+    
     /**
      * Stateful object used to process upload.
      */
     private class Instance 
     implements ProgressListener {
         
-        private boolean aborted = false;
+        /**
+         * Flag indicating whether the upload process has been canceled, aborting the request.
+         * Set by the thread canceling the process.
+         */
+        private volatile boolean aborted = false;
+        
+        /**
+         * Flag indicating whether the receiving thread has finished processing the request, after which the request
+         * may no longer be accessed.  Guarded by the instance.
+         */
+        private boolean finished = false;
         
         /**
          * The current {@link Upload} object being processed.  Progress events will be forwarded
          * to this upload object.
          */
-        private Upload currentUpload;
+        private volatile Upload currentUpload;
+        
+        /**
+         * The number of bytes of the current {@link Upload} which have been received.
+         */
+        private long uploadBytes;
+        
+        /**
+         * The number of bytes of all uploads of the request which have been received.
+         */
+        private volatile long receivedBytes;
+        
+        /**
+         * The monotonic time (<code>System.nanoTime()</code>) at which data was last received.
+         */
+        private volatile long activityTime;
         
         /** 
-         * The next system time (in milliseconds) after which progress may be reported to the component.
-         * This is used to avoid inundating the component with events.
+         * The monotonic time (<code>System.nanoTime()</code>) after which progress may next be reported to the 
+         * component.  This is used to avoid inundating the component with events.
          */ 
-        private long nextProgressTime = 0;
+        private long nextProgressTime;
         
         /**
-         * {@link BandwidthAllocator.Tracker} implementation.
+         * The stream counting the bytes of the request body as transferred, including multipart boundaries and headers,
+         * and before decoding or archive expansion.
          */
-        private BandwidthAllocator.Tracker allocatorTracker = new BandwidthAllocator.Tracker() {
+        private CountingInputStream wireInput;
+        
+        /**
+         * The number of bytes of <code>wireInput</code> which have been accounted for.
+         */
+        private long wireBytes;
+        
+        /**
+         * The number of transferred bytes which have not yet been reported to the {@link UploadProcess}.
+         */
+        private long unreportedBytes;
+        
+        /**
+         * The {@link BandwidthAllocator} of the processor's bandwidth class.
+         */
+        private BandwidthAllocator bandwidthAllocator;
+        
+        /**
+         * The {@link UploadQuota.Account} of the user making the request, or null if uploads are not limited.
+         */
+        private UploadQuota.Account quotaAccount;
+        
+        /**
+         * {@link BandwidthAllocator.PausableTracker} implementation.
+         * Counts the bytes of the current upload and reports its progress at most once per progress interval.
+         */
+        private BandwidthAllocator.Tracker allocatorTracker = new BandwidthAllocator.PausableTracker() {
+            
+            /**
+             * @see nextapp.echo.filetransfer.receiver.BandwidthAllocator.PausableTracker#awaitResume()
+             */
+            public void awaitResume() 
+            throws IOException {
+                reportProgress();
+                uploadProcess.awaitResume(currentUpload);
+            }
             
             /**
              * @see nextapp.echo.filetransfer.receiver.BandwidthAllocator.Tracker#bytesTransferred(long)
              */
-            public void bytesTransferred(long bytes) { }
+            public void bytesTransferred(long bytes) {
+                uploadBytes += bytes;
+                long count = wireInput.getByteCount();
+                bytes = count - wireBytes;
+                wireBytes = count;
+                unreportedBytes += bytes;
+                receivedBytes += bytes;
+                TransferStatistics.bytesReceived(bytes);
+                long time = System.nanoTime();
+                activityTime = time;
+                if (quotaAccount != null && !quotaAccount.consume(bytes)) {
+                    exceedQuota();
+                    return;
+                }
+                if (time - nextProgressTime >= 0) {
+                    reportProgress();
+                    nextProgressTime = time + PROGRESS_INTERVAL;
+                }
+            }
             
             /**
              * @see nextapp.echo.filetransfer.receiver.BandwidthAllocator.Tracker#isAborted()
              */
             public boolean isAborted() {
-                return aborted;
+                return aborted || currentUpload.getStatus() != Upload.STATUS_IN_PROGRESS;
+            }
+            
+            /**
+             * @see nextapp.echo.filetransfer.receiver.BandwidthAllocator.PausableTracker#isPaused()
+             */
+            public boolean isPaused() {
+                return currentUpload.isPaused();
             }
         };
         
@@ -180,7 +420,7 @@ implements UploadProcessor {
              *      nextapp.echo.filetransfer.model.event.UploadProcessEvent)
              */
             public void uploadCancel(UploadProcessEvent e) {
-                aborted = true;
+                abort();
             }
         };
         
@@ -196,6 +436,84 @@ implements UploadProcessor {
             this.id = id;
         }
 
+        /**
+         * Aborts the request after the upload process has been canceled or has timed out.  Invoked by the canceling 
+         * thread, the watchdog or the receiving thread.
+         * The request input is closed, such that a receiving thread blocked reading the request is released where the
+         * container supports it.  The receiving thread discards the data of the current upload when it observes the 
+         * abort.  Has no effect once the receiving thread has finished processing the request, as the container may 
+         * then have recycled the request.
+         */
+        private synchronized void abort() {
+            if (finished) {
+                return;
+            }
+            aborted = true;
+            try {
+                request.getInputStream().close();
+            } catch (IOException ex) {
+                // Do nothing, request is being aborted.
+            }
+        }
+        
+        /**
+         * Terminates the request because the user's upload quota is exhausted.
+         * In-progress uploads are marked with {@link Upload#STATUS_ERROR_QUOTA}.  Invoked by the receiving thread.
+         */
+        private void exceedQuota() {
+            uploadProcess.setStatus(Upload.STATUS_ERROR_QUOTA);
+            abort();
+        }
+        
+        /**
+         * Creates a task which terminates the request if no data is received within the idle timeout, or if data is 
+         * received at less than the minimum transfer rate, as measured over the minimum rate interval.
+         * Time during which the current upload is paused is not taken into account.
+         * 
+         * @return the task, or null if neither an idle timeout nor a minimum transfer rate is configured
+         */
+        private TimerTask createWatchdogTask() {
+            final long idleTimeout = getIdleTimeout() == NO_IDLE_TIMEOUT ? -1 : getIdleTimeout() * 1000000L;
+            final long minimumRate = getMinimumTransferRate();
+            final long rateInterval = getMinimumRateInterval() * 1000000L;
+            if (idleTimeout == -1 && minimumRate == NO_MINIMUM_RATE) {
+                return null;
+            }
+            activityTime = System.nanoTime();
+            return new TimerTask() {
+                
+                private long intervalStartTime = activityTime;
+                private long intervalStartBytes = receivedBytes;
+                
+                /**
+                 * @see java.util.TimerTask#run()
+                 */
+                public void run() {
+                    long time = System.nanoTime();
+                    Upload upload = currentUpload;
+                    if (upload != null && upload.isPaused()) {
+                        activityTime = time;
+                        intervalStartTime = time;
+                        intervalStartBytes = receivedBytes;
+                        return;
+                    }
+                    if (idleTimeout != -1 && time - activityTime > idleTimeout) {
+                        timeout();
+                        cancel();
+                    } else if (minimumRate != NO_MINIMUM_RATE && time - intervalStartTime >= rateInterval) {
+                        long bytes = receivedBytes;
+                        if ((bytes - intervalStartBytes) * 1E9 / (time - intervalStartTime) < minimumRate) {
+                            timeout();
+                            cancel();
+                        } else {
+                            intervalStartTime = time;
+                            intervalStartBytes = bytes;
+                        }
+                    }
+                }
+            };
+        }
+        
         /**
          * Processes the file upload.
          */
@@ -216,30 +534,57 @@ implements UploadProcessor {
                 sfu.setSizeMax(getFileUploadSizeLimit());
             }
             
+            bandwidthAllocator = getAllocator(getBandwidthClass());
             uploadProcess = UploadProcessManager.get(request, id, true);
             uploadProcess.addProcessListener(uploadProcessListener);
             currentUpload = null;
+            UploadQuota quota = UploadProcessManager.getUploadQuota();
+            quotaAccount = quota == null ? null : quota.acquireAccount(request);
+            TransferStatistics.uploadStarted();
+            if (quotaAccount != null && quotaAccount.getRemainingBytes() == 0) {
+                // Reject the request without reading it, creating an upload to inform the listeners.
+                uploadProcess.removeProcessListener(uploadProcessListener);
+                currentUpload = uploadProcess.createUpload();
+                exceedQuota();
+                quotaAccount.release(0);
+                TransferStatistics.uploadEnded(uploadProcess.getUploads());
+                synchronized (this) {
+                    finished = true;
+                }
+                return;
+            }
+            TimerTask watchdogTask = createWatchdogTask();
+            if (watchdogTask != null) {
+                scheduleWatchdogTask(watchdogTask);
+            }
             try {
-                FileItemIterator iter = sfu.getItemIterator(request);
+                DecodingRequestWrapper uploadRequest = new DecodingRequestWrapper(request);
+                wireInput = uploadRequest.getEncodedInput();
+                wireBytes = 0;
+                FileItemIterator iter = sfu.getItemIterator(uploadRequest);
                 int uploadIndex = 0;
                 while (!aborted && iter.hasNext()) {
                     FileItemStream stream = iter.next();
                     
                     if (!stream.isFormField()) {
-                        currentUpload = uploadProcess.createUpload();
-                        
                         String fileName = FilenameUtils.getName(stream.getName());
-                        FileItem item = itemFactory.createItem(stream.getFieldName(), stream.getContentType(), false, 
-                                stream.getName());
-                        uploadProcess.configure(currentUpload, item.getContentType(), fileName);
-                        uploadProcess.start(currentUpload);
-                        if (currentUpload.getStatus() == Upload.STATUS_IN_PROGRESS) {
-                            allocator.copy(allocatorTracker, stream.openStream(), item.getOutputStream());
-                            uploadProcess.complete(currentUpload, item.getInputStream(), item.getSize());
+                        if (isArchiveExpansionEnabled() && isArchive(fileName, stream.getContentType())) {
+                            expand(stream.openStream(), stream.getFieldName(), itemFactory);
+                        } else {
+                            FileItem item = itemFactory.createItem(stream.getFieldName(), stream.getContentType(), 
+                                    false, stream.getName());
+                            receive(stream.openStream(), fileName, item);
                         }
                         ++uploadIndex;
                     }
                 }
+                if (!aborted && currentUpload != null && uploadProcess.isInitialized()) {
+                    // Account for the closing boundary and epilogue of the request, which follow the last upload.
+                    long remainingBytes = uploadProcess.getSize() - uploadProcess.getProgress();
+                    if (remainingBytes > 0) {
+                        uploadProcess.progress(currentUpload, uploadBytes, remainingBytes);
+                    }
+                }
             } catch (SizeLimitExceededException ex) {
                 if (currentUpload == null) {
                     /* If currentUpload is null, the SizeLimitExceededException was thrown
@@ -250,28 +595,326 @@ implements UploadProcessor {
                 }
                 uploadProcess.setStatus(Upload.STATUS_ERROR_OVERSIZE);
             } catch (IOException ex) {
+                if (currentUpload == null) {
+                    // Create an Upload to inform the listeners, e.g., if the request body could not be decoded.
+                    uploadProcess.createUpload();
+                }
                 uploadProcess.setStatus(Upload.STATUS_ERROR_IO);
             } catch (FileUploadException ex) {
                 uploadProcess.setStatus(Upload.STATUS_ERROR_IO);
             } finally {
+                // Uploads left in progress, e.g., by a RuntimeException, would otherwise block readers of live streams.
+                uploadProcess.setStatus(Upload.STATUS_ERROR_IO);
+                if (watchdogTask != null) {
+                    watchdogTask.cancel();
+                }
+                if (quotaAccount != null) {
+                    quotaAccount.release(receivedBytes);
+                }
                 uploadProcess.removeProcessListener(uploadProcessListener);
+                TransferStatistics.uploadEnded(uploadProcess.getUploads());
+                synchronized (this) {
+                    finished = true;
+                }
             }
         }
 
         /**
+         * Expands a ZIP archive as it is received, creating an {@link Upload} for each file entry.  Each upload is 
+         * completed as soon as its entry has been received.  The progress of each upload is reported in expanded bytes, 
+         * while the progress of the process is measured in bytes read from the request, such that it corresponds to the
+         * request's content length.  The combined expanded size of the archive is limited by the file upload size 
+         * limit, uploads exceeding it are marked with {@link Upload#STATUS_ERROR_OVERSIZE}.
+         * 
+         * @param in the stream containing the archive
+         * @param fieldName the name of the form field containing the archive
+         * @param itemFactory the factory used to create items storing the entries
+         * @throws IOException if an I/O error occurs or the archive is invalid
+         */
+        private void expand(InputStream in, String fieldName, DiskFileItemFactory itemFactory) 
+        throws IOException {
+            final long expansionLimit = getFileUploadSizeLimit();
+            ZipInputStream zipIn = new ZipInputStream(in);
+            InputStream entryIn = new FilterInputStream(zipIn) {
+                
+                private long expandedBytes = 0;
+                
+                /**
+                 * @see java.io.FilterInputStream#read()
+                 */
+                public int read() 
+                throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+                }
+                
+                /**
+                 * @see java.io.FilterInputStream#read(byte[], int, int)
+                 */
+                public int read(byte[] b, int off, int len) 
+                throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        expandedBytes += n;
+                        if (expansionLimit != NO_SIZE_LIMIT && expandedBytes > expansionLimit) {
+                            uploadProcess.setStatus(Upload.STATUS_ERROR_OVERSIZE);
+                            abort();
+                            return -1;
+                        }
+                    }
+                    return n;
+                }
+            };
+            ZipEntry entry;
+            while (!aborted && (entry = zipIn.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String fileName = FilenameUtils.getName(entry.getName());
+                String contentType = URLConnection.guessContentTypeFromName(fileName);
+                if (contentType == null) {
+                    contentType = DEFAULT_ENTRY_CONTENT_TYPE;
+                }
+                receive(entryIn, fileName, itemFactory.createItem(fieldName, contentType, false, fileName));
+            }
+        }
+        
+        /**
+         * Receives an {@link Upload}, which is created, inspected and stored according to the processor's settings.
+         * 
+         * @param in the stream containing the uploaded data
+         * @param fileName the file name of the upload
+         * @param item the {@link FileItem} in which the upload is stored if no other storage is configured
+         * @throws IOException if an I/O error occurs
+         */
+        private void receive(InputStream in, String fileName, FileItem item) 
+        throws IOException {
+            currentUpload = uploadProcess.createUpload();
+            uploadProcess.configure(currentUpload, item.getContentType(), fileName);
+            uploadProcess.start(currentUpload);
+            uploadBytes = 0;
+            nextProgressTime = System.nanoTime();
+            if (currentUpload.getStatus() != Upload.STATUS_IN_PROGRESS) {
+                return;
+            }
+            in = inspect(in, fileName, item.getContentType());
+            if (in == null) {
+                return;
+            }
+            FastStorageTier fastStorageTier = getFastStorageTier();
+            if (isLiveStreamEnabled()) {
+                receive(in, new LiveOutputStream(getDiskCacheLocation(), uploadProcess, currentUpload));
+            } else if (fastStorageTier != null) {
+                receive(in, new TieredOutputStream(fastStorageTier, getDiskCacheLocation(), getFastStorageThreshold()));
+            } else if (getDirectIOThreshold() != NO_DIRECT_IO) {
+                receive(in, new DirectIOOutputStream(getDiskCacheLocation(), getDirectIOThreshold()));
+            } else {
+                OutputStream out = item.getOutputStream();
+                boolean copied = false;
+                try {
+                    bandwidthAllocator.copy(allocatorTracker, in, out);
+                    copied = true;
+                } finally {
+                    out.close();
+                    if (!copied) {
+                        item.delete();
+                    }
+                }
+                if (currentUpload.getStatus() == Upload.STATUS_IN_PROGRESS) {
+                    reportProgress();
+                    complete(item);
+                } else {
+                    item.delete();
+                }
+            }
+        }
+        
+        /**
+         * Completes the current {@link Upload} with the data stored in a {@link FileItem}.
+         * Items stored on disk are renamed to a temporary file owned by the {@link UploadProcess}, such that
+         * the data may later be moved without copying.  Items stored in memory are provided as a stream.
+         * 
+         * @param item the {@link FileItem} containing the uploaded data
+         * @throws IOException if the item cannot be stored
+         */
+        private void complete(FileItem item) 
+        throws IOException {
+            long size = item.getSize();
+            if (item.isInMemory()) {
+                uploadProcess.complete(currentUpload, item.getInputStream(), size);
+                return;
+            }
+            File file = File.createTempFile("upload_", ".tmp", getDiskCacheLocation());
+            try {
+                item.write(file);
+            } catch (IOException ex) {
+                file.delete();
+                throw ex;
+            } catch (Exception ex) {
+                file.delete();
+                throw new IOException(ex);
+            }
+            complete(file, size);
+        }
+        
+        /**
+         * Completes the current {@link Upload} with the data stored in a temporary file.
+         * The file is committed to stable storage as specified by the {@link DurabilityPolicy} before the upload 
+         * is completed.  The file is deleted if the upload is no longer in progress.
+         * 
+         * @param file the temporary file
+         * @param size the size of the data, in bytes
+         * @throws IOException if the file cannot be committed to stable storage
+         */
+        private void complete(File file, long size) 
+        throws IOException {
+            DurabilityPolicy durabilityPolicy = getDurabilityPolicy();
+            if (durabilityPolicy != null && currentUpload.getStatus() == Upload.STATUS_IN_PROGRESS) {
+                try {
+                    durabilityPolicy.commit(file);
+                } catch (IOException ex) {
+                    file.delete();
+                    throw ex;
+                }
+            }
+            uploadProcess.complete(currentUpload, file, size);
+            if (currentUpload.getStatus() != Upload.STATUS_COMPLETE) {
+                file.delete();
+            }
+        }
+        
+        /**
+         * Inspects the beginning of the current {@link Upload} with the {@link ContentValidator}, if any.
+         * If the upload is rejected, it alone is marked with {@link Upload#STATUS_ERROR_CONTENT} and the request is 
+         * aborted: uploads completed before it are unaffected, the parts of the request following it are not received.
+         * 
+         * @param in the stream containing the uploaded data
+         * @param fileName the file name of the upload
+         * @param contentType the declared content type of the upload
+         * @return a stream providing the entire uploaded data, including the inspected bytes, or null if the upload
+         *         has been rejected
+         * @throws IOException if an I/O error occurs
+         */
+        private InputStream inspect(InputStream in, String fileName, String contentType) 
+        throws IOException {
+            ContentValidator contentValidator = getContentValidator();
+            if (contentValidator == null) {
+                return in;
+            }
+            byte[] data = new byte[contentValidator.getInspectionLength()];
+            int length = 0;
+            int n;
+            while (length < data.length && (n = in.read(data, length, data.length - length)) != -1) {
+                length += n;
+            }
+            activityTime = System.nanoTime();
+            if (!contentValidator.validate(fileName, contentType, data, length)) {
+                uploadProcess.setStatus(currentUpload, Upload.STATUS_ERROR_CONTENT);
+                abort();
+                return null;
+            }
+            return new SequenceInputStream(new ByteArrayInputStream(data, 0, length), in);
+        }
+        
+        /**
+         * Receives the current {@link Upload} into a temporary file managed by the receiver.
+         * 
+         * @param in the stream containing the uploaded data
+         * @param out the {@link AbstractUploadOutputStream} to which the data should be written
+         * @throws IOException if an I/O error occurs
+         */
+        private void receive(InputStream in, AbstractUploadOutputStream out) 
+        throws IOException {
+            try {
+                bandwidthAllocator.copy(allocatorTracker, in, out);
+                if (currentUpload.getStatus() != Upload.STATUS_IN_PROGRESS) {
+                    out.discard();
+                    return;
+                }
+                out.close();
+                reportProgress();
+            } catch (IOException ex) {
+                out.discard();
+                throw ex;
+            } catch (RuntimeException ex) {
+                out.discard();
+                throw ex;
+            }
+            complete(out.getFile(), out.getSize());
+        }
+
+        /**
+         * Reports the progress of the current {@link Upload}, along with the bytes transferred since the previous report.
+         */
+        private void reportProgress() {
+            uploadProcess.progress(currentUpload, uploadBytes, unreportedBytes);
+            unreportedBytes = 0;
+        }
+        
+        /**
+         * Terminates the request because the client stopped sending data or sent it too slowly.
+         * In-progress uploads are marked with {@link Upload#STATUS_ERROR_TIMEOUT}.  Invoked by the watchdog.
+         */
+        private void timeout() {
+            uploadProcess.setStatus(Upload.STATUS_ERROR_TIMEOUT);
+            abort();
+        }
+        
+        /**
+         * Initializes the {@link UploadProcess} with the request's content length.
+         * Progress of individual uploads is counted by <code>allocatorTracker</code>, as the values provided here
+         * span the entire request.  For encoded request bodies, the length of the encoded body is used.  The process
+         * is not initialized if the length is unknown.
+         * 
          * @see org.apache.commons.fileupload.ProgressListener#update(long, long, int)
          */
         public void update(long pBytesRead, long pContentLength, int pItems) {
             if (!uploadProcess.isInitialized()) {
-                uploadProcess.init(pContentLength);
-            }
-            if (currentUpload != null && System.currentTimeMillis() > nextProgressTime) {
-                uploadProcess.progress(currentUpload, pBytesRead);
-                nextProgressTime = System.currentTimeMillis() + PROGRESS_INTERVAL;
+                long contentLength = pContentLength == -1 ? request.getContentLength() : pContentLength;
+                if (contentLength >= 0) {
+                    uploadProcess.init(contentLength);
+                }
             }
         }
     }
     
+    /**
+     * Determines whether an upload is a ZIP archive which should be expanded, based on its declared content type and
+     * file name.
+     * 
+     * @param fileName the file name of the upload, which may be null
+     * @param contentType the declared content type of the upload, which may be null
+     * @return true if the upload is an archive
+     * @see #isArchiveExpansionEnabled()
+     */
+    protected boolean isArchive(String fileName, String contentType) {
+        if ("application/zip".equals(contentType) || "application/x-zip-compressed".equals(contentType)) {
+            return true;
+        }
+        return fileName != null && fileName.toLowerCase().endsWith(".zip");
+    }
+    
+    /**
+     * Returns the name of the bandwidth class whose bandwidth is shared by uploads received by this processor.
+     * Default implementation returns null, uploads share the global bandwidth.
+     * 
+     * @return the name of the bandwidth class, or null
+     * @see #setBandwidth(String, int)
+     */
+    public String getBandwidthClass() {
+        return null;
+    }
+    
+    /**
+     * Returns the {@link ContentValidator} inspecting the beginning of each upload before the remainder is received.
+     * Default implementation returns null, uploads are not validated.
+     * 
+     * @return the {@link ContentValidator}, or null
+     */
+    public ContentValidator getContentValidator() {
+        return null;
+    }
+    
     /**
      * Returns the location where cached files should be stored to disk.
      * 
@@ -281,6 +924,87 @@ implements UploadProcessor {
         return DEFAULT_TEMP_LOCATION;
     }
 
+    /**
+     * Returns the number of bytes of an upload which are written normally, beyond which the remainder of the upload is 
+     * written using direct I/O, bypassing the operating system's page cache.  Uploads received in this mode are never 
+     * cached in memory.  Direct I/O is not used for uploads received through a {@link FastStorageTier}.
+     * Default implementation returns {@link #NO_DIRECT_IO}, disabling direct I/O.
+     * 
+     * @return the direct I/O threshold, in bytes, or {@link #NO_DIRECT_IO}
+     * @see DirectIOOutputStream
+     */
+    public long getDirectIOThreshold() {
+        return NO_DIRECT_IO;
+    }
+    
+    /**
+     * Returns the {@link DurabilityPolicy} used to commit completed uploads stored in temporary files to stable storage,
+     * before listeners are notified of their completion.
+     * Default implementation returns null, uploads are not explicitly committed to stable storage.
+     * 
+     * @return the {@link DurabilityPolicy}, or null
+     */
+    public DurabilityPolicy getDurabilityPolicy() {
+        return null;
+    }
+
+    /**
+     * Returns the {@link FastStorageTier} to which uploads should initially be written, before spilling to the
+     * disk cache location.  Uploads received through a fast storage tier are never cached in memory.
+     * Default implementation returns null, disabling tiered storage.
+     * 
+     * @return the {@link FastStorageTier}, or null
+     */
+    public FastStorageTier getFastStorageTier() {
+        return null;
+    }
+    
+    /**
+     * Returns the maximum size of an upload which may be stored in the {@link FastStorageTier}.
+     * Uploads exceeding this size are spilled to the disk cache location.
+     * 
+     * @return the maximum size of an upload which may be stored in the fast storage tier, in bytes
+     */
+    public long getFastStorageThreshold() {
+        return DEFAULT_FAST_STORAGE_THRESHOLD;
+    }
+
+    /**
+     * Returns the time after which a request is terminated if no data has been received, in milliseconds.
+     * Uploads of a terminated request are marked with {@link Upload#STATUS_ERROR_TIMEOUT}.  Time during which an upload 
+     * is paused is not taken into account.
+     * Default implementation returns {@link #NO_IDLE_TIMEOUT}, requests are not terminated when idle.
+     * 
+     * @return the idle timeout, in milliseconds, or {@link #NO_IDLE_TIMEOUT}
+     */
+    public long getIdleTimeout() {
+        return NO_IDLE_TIMEOUT;
+    }
+    
+    /**
+     * Returns the interval over which the transfer rate of a request is measured to enforce the minimum transfer rate,
+     * in milliseconds.  The interval determines how long a client may send data below the minimum rate, e.g., due to a 
+     * temporarily degraded connection, before the request is terminated.
+     * 
+     * @return the minimum rate interval, in milliseconds
+     * @see #getMinimumTransferRate()
+     */
+    public long getMinimumRateInterval() {
+        return DEFAULT_MINIMUM_RATE_INTERVAL;
+    }
+    
+    /**
+     * Returns the minimum rate at which a client must send data, in bytes per second.  Requests transferring less data 
+     * over the minimum rate interval are terminated, marking their uploads with {@link Upload#STATUS_ERROR_TIMEOUT}.
+     * Default implementation returns {@link #NO_MINIMUM_RATE}, no minimum rate is enforced.
+     * 
+     * @return the minimum transfer rate, in bytes per second, or {@link #NO_MINIMUM_RATE}
+     * @see #getMinimumRateInterval()
+     */
+    public long getMinimumTransferRate() {
+        return NO_MINIMUM_RATE;
+    }
+
     /**
      * Returns the maximum allowed file upload size, in bytes.
      * 
@@ -299,6 +1023,34 @@ implements UploadProcessor {
         return DEFAULT_MEMORY_CACHE_THRESHOLD;
     }
 
+    /**
+     * Determines whether ZIP archives should be expanded as they are received, creating an {@link Upload} for each 
+     * file contained in the archive rather than for the archive itself.  Each upload completes as soon as its entry has 
+     * been received, such that processing may start while the remainder of the archive is still arriving.
+     * The combined expanded size of an archive is limited by the file upload size limit.  Bandwidth is allocated for 
+     * expanded data.
+     * Default implementation returns false, archives are received as a single upload.
+     * 
+     * @return true if archives should be expanded
+     * @see #isArchive(String, String)
+     */
+    public boolean isArchiveExpansionEnabled() {
+        return false;
+    }
+
+    /**
+     * Determines whether uploads should be received such that they may be read with {@link Upload#openLiveStream()}
+     * while they are still arriving.  Uploads received in this mode are written directly to the disk cache location,
+     * they are never cached in memory, and neither a {@link FastStorageTier} nor direct I/O is used.
+     * Default implementation returns false, uploads may only be read once they have completed.
+     * 
+     * @return true if live streams should be enabled
+     * @see LiveOutputStream
+     */
+    public boolean isLiveStreamEnabled() {
+        return false;
+    }
+
     /**
      * @see nextapp.echo.filetransfer.receiver.UploadProcessor#processUpload(HttpServletRequest,
      *      String)
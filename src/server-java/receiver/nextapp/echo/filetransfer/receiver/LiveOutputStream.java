@@ -0,0 +1,120 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nextapp.echo.filetransfer.model.Upload;
+import nextapp.echo.filetransfer.model.UploadProcess;
+
+/**
+ * An <code>OutputStream</code> which writes to a file in the disk cache, committing each write to the 
+ * {@link UploadProcess} such that the upload may be read with {@link Upload#openLiveStream()} while it is being received.
+ */
+public class LiveOutputStream extends AbstractUploadOutputStream {
+    
+    private UploadProcess uploadProcess;
+    private Upload upload;
+    private File file;
+    private OutputStream out;
+    
+    /**
+     * The number of bytes written.
+     */
+    private long size = 0;
+    
+    /**
+     * Creates a new <code>LiveOutputStream</code>, staging the created file in the <code>UploadProcess</code>.
+     * 
+     * @param diskLocation the location of the disk cache in which the file should be created
+     * @param uploadProcess the {@link UploadProcess}
+     * @param upload the {@link Upload} being received
+     * @throws IOException if the file cannot be created
+     */
+    public LiveOutputStream(File diskLocation, UploadProcess uploadProcess, Upload upload)
+    throws IOException {
+        super();
+        this.uploadProcess = uploadProcess;
+        this.upload = upload;
+        file = File.createTempFile("upload_", ".tmp", diskLocation);
+        out = new FileOutputStream(file);
+        uploadProcess.stage(upload, file);
+    }
+    
+    /**
+     * @see java.io.OutputStream#close()
+     */
+    public void close() 
+    throws IOException {
+        out.close();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#discard()
+     */
+    public void discard() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // Do nothing, file is being discarded.
+        }
+        file.delete();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getFile()
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getSize()
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Writes data to the file, then commits it to the <code>UploadProcess</code>.
+     * Data is written without buffering, such that committed data is immediately visible to readers.
+     * 
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) 
+    throws IOException {
+        out.write(b, off, len);
+        size += len;
+        uploadProcess.commit(upload, size);
+    }
+}
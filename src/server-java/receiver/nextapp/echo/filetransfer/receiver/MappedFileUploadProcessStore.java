@@ -0,0 +1,678 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import nextapp.echo.filetransfer.model.UploadProcess;
+import nextapp.echo.filetransfer.model.UploadProcessSnapshot;
+
+/**
+ * {@link UploadProcessStore} which shares the state of processes between the JVMs of a host through a memory-mapped 
+ * file, such that monitoring requests need not be routed to the JVM receiving the upload.
+ * <p>
+ * Processes are managed by a local store on the JVM receiving the upload.  Their state is periodically written to a
+ * slot of the shared file, keyed by process id, from which monitoring requests received by other JVMs mapping the same 
+ * file are answered.  Commands issued by other JVMs are written to the slot and applied by the owning JVM when it next
+ * updates the slot.  Access to a slot is serialized between JVMs with file region locks, and within a JVM with striped 
+ * monitor locks.  Slots which have not been updated for twenty synchronization intervals, e.g., those of a JVM which 
+ * has terminated, are considered unused.
+ * <p>
+ * A process may only be monitored and controlled by requests of the session which created it: each slot stores a hash
+ * of the session id, which is compared to that of the requesting session, such that knowing the id of a process is 
+ * not sufficient.  Session ids themselves are not written to the file, it should nonetheless only be accessible to 
+ * the containers sharing it.
+ * <p>
+ * Only one store may be open on a file within a JVM, as file region locks are held per JVM.  A store must be closed 
+ * with {@link #close()} to stop its synchronization thread and release the file, which 
+ * {@link UploadProcessManager#setUploadProcessStore(UploadProcessStore)} does when the store is replaced.
+ */
+public class MappedFileUploadProcessStore 
+implements Closeable, UploadProcessStore {
+    
+    private static final Logger logger = Logger.getLogger(MappedFileUploadProcessStore.class.getName());
+    
+    private static final int MAGIC = 0x45465450;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 256;
+    private static final int MAX_ID_LENGTH = 128;
+    private static final int LOCK_STRIPES = 64;
+    private static final long DEFAULT_SYNC_INTERVAL = 500;
+    
+    /**
+     * Time after which a locally stored process without uploads is assumed to have been disposed, in milliseconds.
+     */
+    private static final long ORPHAN_TIME = 5 * 60 * 1000;
+    
+    /** Slot field: length of the process id, or <code>ID_UNUSED</code> / <code>ID_REMOVED</code>. */
+    private static final int SLOT_ID_LENGTH = 0;
+    
+    /** Slot field: pending command, or 0. */
+    private static final int SLOT_COMMAND = 4;
+    
+    /** Slot field: time of the last update (<code>System.currentTimeMillis()</code>). */
+    private static final int SLOT_UPDATE_TIME = 8;
+    
+    private static final int SLOT_PROGRESS = 16;
+    private static final int SLOT_UPLOAD_SIZE = 24;
+    private static final int SLOT_TRANSFER_RATE = 32;
+    private static final int SLOT_ESTIMATED_TIME_REMAINING = 40;
+    private static final int SLOT_FLAGS = 48;
+    
+    /** Slot field: hash of the id of the session owning the process, see <code>getOwner()</code>. */
+    private static final int SLOT_OWNER = 56;
+    
+    private static final int SLOT_ID = 64;
+    
+    private static final int ID_UNUSED = 0;
+    private static final int ID_REMOVED = -1;
+    
+    private static final int FLAG_CANCELED = 1;
+    private static final int FLAG_COMPLETE = 2;
+    private static final int FLAG_PAUSED = 4;
+    
+    /**
+     * Canonical paths of the files of all open stores of this JVM.
+     */
+    private static final Set openFiles = new HashSet();
+    
+    /**
+     * A slot owned by this JVM.
+     */
+    private static class Slot {
+        
+        private String id;
+        private byte[] idBytes;
+        private long owner;
+        private int index;
+        private UploadProcess uploadProcess;
+        
+        /**
+         * Time since which the process has contained no uploads, or -1.  Only accessed by the synchronization task.
+         */
+        private long emptySince = -1;
+        
+        /**
+         * Creates a new <code>Slot</code>.
+         * 
+         * @param id the process id
+         * @param idBytes the encoded process id
+         * @param owner the hash of the id of the session owning the process
+         * @param index the slot index
+         * @param uploadProcess the process
+         */
+        private Slot(String id, byte[] idBytes, long owner, int index, UploadProcess uploadProcess) {
+            super();
+            this.id = id;
+            this.idBytes = idBytes;
+            this.owner = owner;
+            this.index = index;
+            this.uploadProcess = uploadProcess;
+        }
+    }
+    
+    private UploadProcessStore localStore;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slotCount;
+    private long staleTime;
+    private Object[] stripes = new Object[LOCK_STRIPES];
+    
+    /**
+     * Slots owned by this JVM, mapping process ids to {@link Slot}s.
+     */
+    private ConcurrentMap ownedSlots = new ConcurrentHashMap();
+    
+    /**
+     * Timer writing the state of owned processes to the file.
+     */
+    private Timer timer = new Timer("MappedFileUploadProcessStore Sync", true);
+    
+    /**
+     * The canonical path of the shared file.
+     */
+    private String path;
+    
+    /**
+     * Flag indicating whether the store has been closed.
+     */
+    private volatile boolean closed = false;
+    
+    /**
+     * Creates a new <code>MappedFileUploadProcessStore</code> using a {@link SessionUploadProcessStore} to manage local
+     * processes.
+     * 
+     * @param file the shared file, created if it does not exist
+     * @param capacity the maximum number of processes shared by all JVMs, used only when creating the file
+     * @throws IOException if the file cannot be created or mapped, or is not a valid store
+     */
+    public MappedFileUploadProcessStore(File file, int capacity)
+    throws IOException {
+        this(file, capacity, new SessionUploadProcessStore(), DEFAULT_SYNC_INTERVAL);
+    }
+    
+    /**
+     * Creates a new <code>MappedFileUploadProcessStore</code>.
+     * 
+     * @param file the shared file, created if it does not exist
+     * @param capacity the maximum number of processes shared by all JVMs, used only when creating the file
+     * @param localStore the store managing processes received by this JVM
+     * @param syncInterval the interval at which the state of local processes is written to the file, in milliseconds
+     * @throws IOException if the file cannot be created or mapped, is not a valid store, or is already used by an 
+     *         open store of this JVM
+     */
+    public MappedFileUploadProcessStore(File file, int capacity, UploadProcessStore localStore, long syncInterval)
+    throws IOException {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        path = file.getCanonicalPath();
+        synchronized (openFiles) {
+            if (!openFiles.add(path)) {
+                timer.cancel();
+                throw new IOException("Upload process store already open in this JVM: " + file);
+            }
+        }
+        this.localStore = localStore;
+        staleTime = syncInterval * 20;
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new Object();
+        }
+        
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                if (channel.size() < HEADER_SIZE) {
+                    header.putInt(MAGIC).putInt(VERSION).putInt(capacity);
+                    header.clear();
+                    channel.write(header, 0);
+                    channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) capacity * SLOT_SIZE - 1);
+                    slotCount = capacity;
+                } else {
+                    channel.read(header, 0);
+                    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                        throw new IOException("Not an upload process store: " + file);
+                    }
+                    slotCount = header.getInt(8);
+                }
+            } finally {
+                lock.release();
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+        } catch (IOException ex) {
+            channel.close();
+            timer.cancel();
+            synchronized (openFiles) {
+                openFiles.remove(path);
+            }
+            throw ex;
+        }
+        
+        timer.schedule(new TimerTask() {
+            
+            /**
+             * @see java.util.TimerTask#run()
+             */
+            public void run() {
+                try {
+                    sync();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Failed to update upload process store.", ex);
+                }
+            }
+        }, syncInterval, syncInterval);
+    }
+    
+    /**
+     * Claims a free slot for a process.
+     * 
+     * @param idBytes the encoded process id
+     * @param owner the hash of the id of the session owning the process
+     * @return the index of the claimed slot, or -1 if the store is full
+     * @throws IOException if the slot cannot be locked
+     */
+    private int claim(byte[] idBytes, long owner)
+    throws IOException {
+        int start = hash(idBytes);
+        for (int i = 0; i < slotCount; ++i) {
+            int index = (start + i) % slotCount;
+            if (!isFree(index, System.currentTimeMillis())) {
+                continue;
+            }
+            synchronized (stripes[index % LOCK_STRIPES]) {
+                FileLock lock = channel.lock(getPosition(index), SLOT_SIZE, false);
+                try {
+                    long time = System.currentTimeMillis();
+                    if (isFree(index, time)) {
+                        int position = getPosition(index);
+                        for (int j = 0; j < idBytes.length; ++j) {
+                            buffer.put(position + SLOT_ID + j, idBytes[j]);
+                        }
+                        buffer.putInt(position + SLOT_COMMAND, 0);
+                        buffer.putLong(position + SLOT_UPDATE_TIME, time);
+                        buffer.putLong(position + SLOT_PROGRESS, 0);
+                        buffer.putLong(position + SLOT_UPLOAD_SIZE, -1);
+                        buffer.putLong(position + SLOT_TRANSFER_RATE, 0);
+                        buffer.putLong(position + SLOT_ESTIMATED_TIME_REMAINING, -1);
+                        buffer.putInt(position + SLOT_FLAGS, 0);
+                        buffer.putLong(position + SLOT_OWNER, owner);
+                        buffer.putInt(position + SLOT_ID_LENGTH, idBytes.length);
+                        return index;
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Stops sharing the state of local processes and closes the file, such that another store may be opened on it.  
+     * Local processes remain available through the local store.  The mapping of the file is released once the store
+     * is garbage collected.  Has no effect if the store is already closed.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        timer.cancel();
+        Iterator it = ownedSlots.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = (Slot) it.next();
+            it.remove();
+            release(slot);
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            synchronized (openFiles) {
+                openFiles.remove(path);
+            }
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#command(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String, int)
+     */
+    public boolean command(HttpServletRequest request, String id, int command) {
+        if (localStore.command(request, id, command)) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        byte[] idBytes = encode(id);
+        int index = find(idBytes);
+        if (index == -1) {
+            return false;
+        }
+        synchronized (stripes[index % LOCK_STRIPES]) {
+            try {
+                FileLock lock = channel.lock(getPosition(index), SLOT_SIZE, false);
+                try {
+                    if (!isOwnedBy(index, idBytes, System.currentTimeMillis()) 
+                            || buffer.getLong(getPosition(index) + SLOT_OWNER) != getOwner(request)) {
+                        return false;
+                    }
+                    buffer.putInt(getPosition(index) + SLOT_COMMAND, command);
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Encodes a process id.
+     * 
+     * @param id the process id
+     * @return the encoded id, or null if it is too long to be stored
+     */
+    private byte[] encode(String id) {
+        try {
+            byte[] idBytes = id == null ? null : id.getBytes("UTF-8");
+            return idBytes == null || idBytes.length == 0 || idBytes.length > MAX_ID_LENGTH ? null : idBytes;
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    
+    /**
+     * Finds the slot of a process, without locking.  The result must be verified once the slot is locked.
+     * 
+     * @param idBytes the encoded process id, may be null
+     * @return the index of the slot, or -1 if none was found
+     */
+    private int find(byte[] idBytes) {
+        if (idBytes == null) {
+            return -1;
+        }
+        int start = hash(idBytes);
+        for (int i = 0; i < slotCount; ++i) {
+            int index = (start + i) % slotCount;
+            int idLength = buffer.getInt(getPosition(index) + SLOT_ID_LENGTH);
+            if (idLength == ID_UNUSED) {
+                return -1;
+            }
+            if (idLength == idBytes.length && isIdEqual(index, idBytes)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#get(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String, boolean)
+     */
+    public UploadProcess get(HttpServletRequest request, String id, boolean create) {
+        UploadProcess uploadProcess = localStore.get(request, id, create);
+        if (uploadProcess != null && create && !closed && !ownedSlots.containsKey(id)) {
+            byte[] idBytes = encode(id);
+            if (idBytes == null) {
+                return uploadProcess;
+            }
+            try {
+                long owner = getOwner(request);
+                Slot slot = new Slot(id, idBytes, owner, claim(idBytes, owner), uploadProcess);
+                if (ownedSlots.putIfAbsent(id, slot) != null) {
+                    release(slot);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return uploadProcess;
+    }
+    
+    /**
+     * Computes the owner of processes created by a request, the first eight bytes of the SHA-256 hash of the id of 
+     * the requesting session.  The hash must be identical in all JVMs.
+     * 
+     * @param request the HTTP request
+     * @return the owner, or 0 if the request has no session
+     */
+    private long getOwner(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return 0;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(session.getId().getBytes("UTF-8"));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    
+    /**
+     * Returns the position of a slot within the file.
+     * 
+     * @param index the slot index
+     * @return the position
+     */
+    private int getPosition(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#getSnapshot(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String)
+     */
+    public UploadProcessSnapshot getSnapshot(HttpServletRequest request, String id) {
+        UploadProcessSnapshot snapshot = localStore.getSnapshot(request, id);
+        if (snapshot != null || closed) {
+            return snapshot;
+        }
+        byte[] idBytes = encode(id);
+        int index = find(idBytes);
+        if (index == -1) {
+            return null;
+        }
+        synchronized (stripes[index % LOCK_STRIPES]) {
+            try {
+                FileLock lock = channel.lock(getPosition(index), SLOT_SIZE, true);
+                try {
+                    if (!isOwnedBy(index, idBytes, System.currentTimeMillis()) 
+                            || buffer.getLong(getPosition(index) + SLOT_OWNER) != getOwner(request)) {
+                        return null;
+                    }
+                    int position = getPosition(index);
+                    int flags = buffer.getInt(position + SLOT_FLAGS);
+                    return new UploadProcessSnapshot((flags & FLAG_CANCELED) != 0, (flags & FLAG_COMPLETE) != 0, 
+                            (flags & FLAG_PAUSED) != 0, buffer.getLong(position + SLOT_PROGRESS), 
+                            buffer.getLong(position + SLOT_UPLOAD_SIZE), buffer.getLong(position + SLOT_TRANSFER_RATE), 
+                            buffer.getLong(position + SLOT_ESTIMATED_TIME_REMAINING));
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Computes the initial slot index of a process.  The hash must be identical in all JVMs.
+     * 
+     * @param idBytes the encoded process id
+     * @return the initial slot index
+     */
+    private int hash(byte[] idBytes) {
+        int hash = 0;
+        for (int i = 0; i < idBytes.length; ++i) {
+            hash = 31 * hash + idBytes[i];
+        }
+        return (hash & 0x7fffffff) % slotCount;
+    }
+    
+    /**
+     * Determines whether a slot may be claimed.
+     * 
+     * @param index the slot index
+     * @param time the current time
+     * @return true if the slot is unused, has been removed, or is stale
+     */
+    private boolean isFree(int index, long time) {
+        int position = getPosition(index);
+        int idLength = buffer.getInt(position + SLOT_ID_LENGTH);
+        return idLength == ID_UNUSED || idLength == ID_REMOVED 
+                || time - buffer.getLong(position + SLOT_UPDATE_TIME) > staleTime;
+    }
+    
+    /**
+     * Determines whether a slot contains the specified process id.
+     * 
+     * @param index the slot index
+     * @param idBytes the encoded process id
+     * @return true if the slot contains the id
+     */
+    private boolean isIdEqual(int index, byte[] idBytes) {
+        int position = getPosition(index) + SLOT_ID;
+        for (int i = 0; i < idBytes.length; ++i) {
+            if (buffer.get(position + i) != idBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Determines whether a slot is currently in use by the specified process.  The slot must be locked.
+     * 
+     * @param index the slot index
+     * @param idBytes the encoded process id
+     * @param time the current time
+     * @return true if the slot is in use by the process
+     */
+    private boolean isOwnedBy(int index, byte[] idBytes, long time) {
+        int position = getPosition(index);
+        return buffer.getInt(position + SLOT_ID_LENGTH) == idBytes.length && isIdEqual(index, idBytes)
+                && time - buffer.getLong(position + SLOT_UPDATE_TIME) <= staleTime;
+    }
+    
+    /**
+     * Releases a slot owned by this JVM.
+     * 
+     * @param slot the slot
+     */
+    private void release(Slot slot) {
+        if (slot.index == -1) {
+            return;
+        }
+        synchronized (stripes[slot.index % LOCK_STRIPES]) {
+            try {
+                FileLock lock = channel.lock(getPosition(slot.index), SLOT_SIZE, false);
+                try {
+                    if (buffer.getInt(getPosition(slot.index) + SLOT_ID_LENGTH) == slot.idBytes.length 
+                            && isIdEqual(slot.index, slot.idBytes) 
+                            && buffer.getLong(getPosition(slot.index) + SLOT_OWNER) == slot.owner) {
+                        buffer.putInt(getPosition(slot.index) + SLOT_ID_LENGTH, ID_REMOVED);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#remove(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String)
+     */
+    public UploadProcess remove(HttpServletRequest request, String id) {
+        UploadProcess uploadProcess = localStore.remove(request, id);
+        if (uploadProcess != null) {
+            Slot slot = (Slot) ownedSlots.get(id);
+            if (slot != null && slot.uploadProcess == uploadProcess && ownedSlots.remove(id, slot)) {
+                release(slot);
+            }
+        }
+        return uploadProcess;
+    }
+    
+    /**
+     * Writes the state of all processes owned by this JVM to the file, and applies commands issued by other JVMs.
+     * Processes which have contained no uploads for an extended period are assumed to have been disposed without being 
+     * removed, e.g., because their session has ended, and are no longer shared.
+     */
+    private void sync() {
+        Iterator it = ownedSlots.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = (Slot) it.next();
+            if (slot.index == -1) {
+                continue;
+            }
+            UploadProcessSnapshot snapshot = slot.uploadProcess.snapshot();
+            long time = System.currentTimeMillis();
+            if (snapshot.getEntryCount() != 0) {
+                slot.emptySince = -1;
+            } else if (slot.emptySince == -1) {
+                slot.emptySince = time;
+            } else if (time - slot.emptySince > ORPHAN_TIME) {
+                if (ownedSlots.remove(slot.id, slot)) {
+                    release(slot);
+                }
+                continue;
+            }
+            
+            int command;
+            synchronized (stripes[slot.index % LOCK_STRIPES]) {
+                try {
+                    FileLock lock = channel.lock(getPosition(slot.index), SLOT_SIZE, false);
+                    try {
+                        int position = getPosition(slot.index);
+                        if (buffer.getInt(position + SLOT_ID_LENGTH) != slot.idBytes.length 
+                                || !isIdEqual(slot.index, slot.idBytes) || buffer.getLong(position + SLOT_OWNER) != slot.owner) {
+                            // Slot was considered stale and claimed by another process.
+                            continue;
+                        }
+                        command = buffer.getInt(position + SLOT_COMMAND);
+                        buffer.putInt(position + SLOT_COMMAND, 0);
+                        buffer.putLong(position + SLOT_UPDATE_TIME, time);
+                        buffer.putLong(position + SLOT_PROGRESS, snapshot.getProgress());
+                        buffer.putLong(position + SLOT_UPLOAD_SIZE, snapshot.getSize());
+                        buffer.putLong(position + SLOT_TRANSFER_RATE, snapshot.getTransferRate());
+                        buffer.putLong(position + SLOT_ESTIMATED_TIME_REMAINING, snapshot.getEstimatedTimeRemaining());
+                        buffer.putInt(position + SLOT_FLAGS, (snapshot.isCanceled() ? FLAG_CANCELED : 0) 
+                                | (snapshot.isComplete() ? FLAG_COMPLETE : 0) | (snapshot.isPaused() ? FLAG_PAUSED : 0));
+                    } finally {
+                        lock.release();
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            if (command == COMMAND_CANCEL || command == COMMAND_PAUSE || command == COMMAND_RESUME) {
+                UploadProcessManager.apply(slot.uploadProcess, command);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import nextapp.echo.filetransfer.model.UploadProcess;
+import nextapp.echo.filetransfer.model.UploadProcessSnapshot;
+
+/**
+ * Default {@link UploadProcessStore} implementation, storing processes by session.
+ * <p>
+ * Processes are held in a concurrent registry keyed by session and process id, lookups do not acquire any lock.
+ * The session itself is only modified when the first process of the session is created, at which point an attribute
+ * is stored which removes the session's processes from the registry when the session ends, and when the last process
+ * of the session is removed, at which point the attribute is removed again.  This attribute is a
+ * small serializable handle containing only the session id, such that session replication and passivation are not
+ * affected by the size or number of uploads.
+ * Processes are only available to requests of the same session received by the same node.
+ */
+public class SessionUploadProcessStore 
+implements UploadProcessStore {
+    
+    public static final String SESSION_KEY = UploadProcessManager.class.getName();
+    
+    /**
+     * Session attribute removing the processes of a session from the registry when the session ends.
+     * The references to the store and registry entry are not serialized: a binding restored after passivation 
+     * releases the session's processes from all stores of the node.
+     */
+    private static class SessionBinding 
+    implements HttpSessionBindingListener, Serializable {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private transient SessionUploadProcessStore store;
+        private transient Map uploadProcessMap;
+        private String sessionId;
+        
+        /**
+         * Creates a new <code>SessionBinding</code>.
+         * 
+         * @param store the store whose registry contains the processes of the session
+         * @param sessionId the id of the session
+         * @param uploadProcessMap the registry entry of the session
+         */
+        private SessionBinding(SessionUploadProcessStore store, String sessionId, Map uploadProcessMap) {
+            super();
+            this.store = store;
+            this.sessionId = sessionId;
+            this.uploadProcessMap = uploadProcessMap;
+        }
+        
+        /**
+         * @see javax.servlet.http.HttpSessionBindingListener#valueBound(javax.servlet.http.HttpSessionBindingEvent)
+         */
+        public void valueBound(HttpSessionBindingEvent e) { }
+        
+        /**
+         * @see javax.servlet.http.HttpSessionBindingListener#valueUnbound(javax.servlet.http.HttpSessionBindingEvent)
+         */
+        public void valueUnbound(HttpSessionBindingEvent e) {
+            if (store != null) {
+                store.release(sessionId, uploadProcessMap);
+                return;
+            }
+            SessionUploadProcessStore[] stores;
+            synchronized (instances) {
+                stores = (SessionUploadProcessStore[]) instances.keySet().toArray(
+                        new SessionUploadProcessStore[instances.size()]);
+            }
+            for (int i = 0; i < stores.length; ++i) {
+                stores[i].release(sessionId, null);
+            }
+        }
+    }
+    
+    /**
+     * Stores of this node, used by deserialized {@link SessionBinding}s.  Keys are weakly referenced.
+     */
+    private static final Map instances = Collections.synchronizedMap(new WeakHashMap());
+    
+    /**
+     * Registry of active processes, mapping session ids to <code>ConcurrentMap</code>s which map process ids to 
+     * {@link UploadProcess}es.
+     */
+    private final ConcurrentMap registry = new ConcurrentHashMap();
+    
+    /**
+     * Creates a new <code>SessionUploadProcessStore</code>.
+     */
+    public SessionUploadProcessStore() {
+        super();
+        instances.put(this, Boolean.TRUE);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#command(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String, int)
+     */
+    public boolean command(HttpServletRequest request, String id, int command) {
+        UploadProcess uploadProcess = get(request, id, false);
+        if (uploadProcess == null) {
+            return false;
+        }
+        UploadProcessManager.apply(uploadProcess, command);
+        return true;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#get(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String, boolean)
+     */
+    public UploadProcess get(HttpServletRequest request, String id, boolean create) {
+        HttpSession session = request.getSession(create);
+        if (session == null) {
+            return null;
+        }
+        while (true) {
+            ConcurrentMap uploadProcessMap = (ConcurrentMap) registry.get(session.getId());
+            if (uploadProcessMap == null) {
+                if (!create) {
+                    return null;
+                }
+                uploadProcessMap = new ConcurrentHashMap();
+                ConcurrentMap existingMap = (ConcurrentMap) registry.putIfAbsent(session.getId(), uploadProcessMap);
+                if (existingMap == null) {
+                    synchronized (this) {
+                        session.setAttribute(SESSION_KEY, new SessionBinding(this, session.getId(), uploadProcessMap));
+                    }
+                } else {
+                    uploadProcessMap = existingMap;
+                }
+            }
+            UploadProcess uploadProcess = (UploadProcess) uploadProcessMap.get(id);
+            if (uploadProcess == null) {
+                if (!create) {
+                    return null;
+                }
+                uploadProcess = new UploadProcess(id);
+                UploadProcess existingProcess = (UploadProcess) uploadProcessMap.putIfAbsent(id, uploadProcess);
+                if (existingProcess != null) {
+                    uploadProcess = existingProcess;
+                }
+                if (registry.get(session.getId()) != uploadProcessMap) {
+                    // Registry entry of the session was dropped concurrently by the removal of its last process.
+                    continue;
+                }
+            }
+            return uploadProcess;
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#getSnapshot(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String)
+     */
+    public UploadProcessSnapshot getSnapshot(HttpServletRequest request, String id) {
+        UploadProcess uploadProcess = get(request, id, false);
+        return uploadProcess == null ? null : uploadProcess.snapshot();
+    }
+    
+    /**
+     * Removes the processes of a session from the registry and disposes of them.
+     * 
+     * @param sessionId the id of the session
+     * @param uploadProcessMap the registry entry to remove, or null to remove any entry of the session
+     */
+    private void release(String sessionId, Map uploadProcessMap) {
+        if (uploadProcessMap == null) {
+            uploadProcessMap = (Map) registry.remove(sessionId);
+            if (uploadProcessMap == null) {
+                return;
+            }
+        } else if (!registry.remove(sessionId, uploadProcessMap)) {
+            return;
+        }
+        Iterator it = uploadProcessMap.values().iterator();
+        while (it.hasNext()) {
+            ((UploadProcess) it.next()).dispose();
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.UploadProcessStore#remove(javax.servlet.http.HttpServletRequest, 
+     *      java.lang.String)
+     */
+    public UploadProcess remove(HttpServletRequest request, String id) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Map uploadProcessMap = (Map) registry.get(session.getId());
+        if (uploadProcessMap == null) {
+            return null;
+        }
+        UploadProcess uploadProcess = (UploadProcess) uploadProcessMap.remove(id);
+        if (uploadProcess != null && uploadProcessMap.isEmpty() && registry.remove(session.getId(), uploadProcessMap)) {
+            synchronized (this) {
+                // Binding is only removed if not already replaced by that of a registry entry created concurrently.
+                Object binding = session.getAttribute(SESSION_KEY);
+                if (binding instanceof SessionBinding && ((SessionBinding) binding).uploadProcessMap == uploadProcessMap) {
+                    session.removeAttribute(SESSION_KEY);
+                }
+            }
+        }
+        return uploadProcess;
+    }
+}
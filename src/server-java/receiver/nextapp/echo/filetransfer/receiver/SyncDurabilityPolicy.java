@@ -0,0 +1,115 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link DurabilityPolicy} which individually synchronizes each completed upload to stable storage.
+ */
+public class SyncDurabilityPolicy 
+implements DurabilityPolicy {
+    
+    /**
+     * Singleton instance.
+     */
+    public static final SyncDurabilityPolicy INSTANCE = new SyncDurabilityPolicy();
+    
+    /**
+     * Synchronizes a file's data and the directory entry of its containing directory to stable storage.
+     * 
+     * @param file the file
+     * @throws IOException if the file cannot be synchronized
+     */
+    static void sync(File file) 
+    throws IOException {
+        syncData(file);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            syncDirectory(directory);
+        }
+    }
+    
+    /**
+     * Synchronizes a file's data to stable storage, without its directory entry.
+     * 
+     * @param file the file
+     * @throws IOException if the file cannot be synchronized
+     */
+    static void syncData(File file) 
+    throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Synchronizes the entries of a directory to stable storage, where supported by the platform.
+     * 
+     * @param directory the directory
+     * @throws IOException if the directory can be opened but not synchronized
+     */
+    static void syncDirectory(File directory) 
+    throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            // Directories cannot be opened on all platforms, the file data is nonetheless durable.
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Default constructor.  This is a singleton, use <code>INSTANCE</code> static property.
+     */
+    private SyncDurabilityPolicy() {
+        super();
+    }
+
+    /**
+     * @see nextapp.echo.filetransfer.receiver.DurabilityPolicy#commit(java.io.File)
+     */
+    public void commit(File file) 
+    throws IOException {
+        sync(file);
+    }
+}
@@ -0,0 +1,236 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An <code>OutputStream</code> which writes to a file in a {@link FastStorageTier}, spilling the data to a file in
+ * the disk cache once the written data exceeds a size threshold or the tier runs out of space.
+ */
+public class TieredOutputStream extends AbstractUploadOutputStream {
+    
+    /**
+     * Amount of space reserved from the tier at a time, to avoid acquiring the tier's lock on every write.
+     */
+    private static final int RESERVATION_SIZE = 256 * 1024;
+    
+    /**
+     * The fast storage tier, null once data has been spilled to disk.
+     */
+    private FastStorageTier tier;
+    
+    /**
+     * The location of the disk cache to which data will be spilled.
+     */
+    private File diskLocation;
+    
+    /**
+     * The maximum number of bytes which may be written to the fast tier.
+     */
+    private long spillThreshold;
+    
+    /**
+     * The file currently being written.
+     */
+    private File file;
+    
+    /**
+     * Stream writing to <code>file</code>.
+     */
+    private OutputStream out;
+    
+    /**
+     * The number of bytes written.
+     */
+    private long size = 0;
+    
+    /**
+     * The number of bytes reserved from the tier.
+     */
+    private long reserved = 0;
+    
+    /**
+     * Creates a new <code>TieredOutputStream</code>.
+     * 
+     * @param tier the fast storage tier to which data should initially be written
+     * @param diskLocation the location of the disk cache to which data will be spilled
+     * @param spillThreshold the maximum number of bytes which may be written to the fast tier
+     * @throws IOException if the file in the fast tier cannot be created
+     */
+    public TieredOutputStream(FastStorageTier tier, File diskLocation, long spillThreshold)
+    throws IOException {
+        super();
+        this.tier = tier;
+        this.diskLocation = diskLocation;
+        this.spillThreshold = spillThreshold;
+        file = File.createTempFile("upload_", ".tmp", tier.getLocation());
+        out = new FileOutputStream(file);
+    }
+    
+    /**
+     * @see java.io.OutputStream#close()
+     */
+    public void close() 
+    throws IOException {
+        out.close();
+        if (tier != null) {
+            tier.trim(file, size);
+        }
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#discard()
+     */
+    public void discard() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // Do nothing, file is being discarded.
+        }
+        file.delete();
+        if (tier != null) {
+            tier.release(file);
+        }
+    }
+    
+    /**
+     * @see java.io.OutputStream#flush()
+     */
+    public void flush() 
+    throws IOException {
+        out.flush();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getFile()
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.AbstractUploadOutputStream#getSize()
+     */
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Determines whether the data is stored in the fast storage tier.
+     * 
+     * @return true if the data is stored in the fast tier, false if it has been spilled to disk
+     */
+    public boolean isFast() {
+        return tier != null;
+    }
+    
+    /**
+     * Ensures space is reserved in the tier for additional data.
+     * 
+     * @param length the number of additional bytes to be written
+     * @return true if the data may be written to the fast tier
+     */
+    private boolean reserve(int length) {
+        if (size + length > spillThreshold) {
+            return false;
+        }
+        if (size + length <= reserved) {
+            return true;
+        }
+        long bytes = Math.max(length, Math.min(RESERVATION_SIZE, spillThreshold - reserved));
+        if (!tier.reserve(file, bytes)) {
+            return false;
+        }
+        reserved += bytes;
+        return true;
+    }
+    
+    /**
+     * Moves all data written thus far from the fast tier to the disk cache.
+     * Subsequent data will be written to the disk cache.
+     * 
+     * @throws IOException if the data cannot be moved
+     */
+    private void spill() 
+    throws IOException {
+        out.close();
+        File diskFile = File.createTempFile("upload_", ".tmp", diskLocation);
+        FileOutputStream diskOut = new FileOutputStream(diskFile);
+        FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            // Copy exactly the bytes accounted as written, the fast tier file may contain a partially failed write.
+            FileChannel target = diskOut.getChannel();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+        } catch (IOException ex) {
+            diskOut.close();
+            diskFile.delete();
+            throw ex;
+        } finally {
+            source.close();
+        }
+        file.delete();
+        tier.release(file);
+        tier = null;
+        file = diskFile;
+        out = diskOut;
+    }
+    
+    /**
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) 
+    throws IOException {
+        if (tier != null) {
+            if (!reserve(len)) {
+                spill();
+            } else {
+                try {
+                    out.write(b, off, len);
+                    size += len;
+                    return;
+                } catch (IOException ex) {
+                    // Fast tier file system is full, retry on disk.
+                    spill();
+                }
+            }
+        }
+        out.write(b, off, len);
+        size += len;
+    }
+}
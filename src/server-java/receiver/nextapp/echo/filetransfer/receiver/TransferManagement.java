@@ -0,0 +1,391 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import nextapp.echo.filetransfer.model.Upload;
+
+/**
+ * JMX management bean exposing {@link TransferStatistics} and allowing bandwidth, upload processor limits and 
+ * {@link UploadQuota}s to be changed at runtime.
+ * <p>
+ * Limits of upload processors may only be changed if they are {@link UploadProcessorProfile}s, as is the default 
+ * upload processor unless a custom one has been configured.  Changes apply to subsequently received requests.
+ * The bean is registered with the platform <code>MBeanServer</code> by invoking {@link #register()}, e.g., from within
+ * a servlet's <code>init()</code> method.
+ */
+public class TransferManagement 
+implements TransferManagementMBean {
+    
+    /**
+     * The name under which the bean is registered.
+     */
+    public static final String OBJECT_NAME = "nextapp.echo.filetransfer:type=TransferManagement";
+    
+    /**
+     * Length of the window of quotas created through this bean, in milliseconds.
+     */
+    private static final long DEFAULT_QUOTA_WINDOW_LENGTH = 60 * 60 * 1000; // 1 hour
+    
+    /**
+     * Filter accepting temporary upload files.
+     */
+    private static final FileFilter TEMPORARY_FILE_FILTER = new FileFilter() {
+        
+        /**
+         * @see java.io.FileFilter#accept(java.io.File)
+         */
+        public boolean accept(File file) {
+            return file.getName().startsWith("upload_") && file.getName().endsWith(".tmp");
+        }
+    };
+    
+    /**
+     * Registers a <code>TransferManagement</code> bean with the platform <code>MBeanServer</code>, 
+     * if not already registered.
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new TransferManagement(), name);
+            }
+        } catch (JMException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    
+    /**
+     * Unregisters the <code>TransferManagement</code> bean from the platform <code>MBeanServer</code>, if registered.
+     */
+    public static synchronized void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    
+    /**
+     * Returns the default upload processor as an {@link UploadProcessorProfile}.
+     * 
+     * @return the default upload processor
+     * @throws IllegalStateException if a custom upload processor which is not a profile has been configured
+     */
+    private static UploadProcessorProfile getDefaultProfile() {
+        return getProfile(null);
+    }
+    
+    /**
+     * Returns a registered {@link UploadProcessorProfile}.
+     * 
+     * @param profile the name of the profile, or null for the default upload processor
+     * @return the profile
+     * @throws IllegalStateException if the upload processor of the profile is not an 
+     *         <code>UploadProcessorProfile</code>
+     */
+    private static UploadProcessorProfile getProfile(String profile) {
+        UploadProcessor uploadProcessor = UploadProcessorFactory.getUploadProcessor(profile);
+        if (!(uploadProcessor instanceof UploadProcessorProfile)) {
+            throw new IllegalStateException("UploadProcessor is not an UploadProcessorProfile: " + uploadProcessor);
+        }
+        return (UploadProcessorProfile) uploadProcessor;
+    }
+    
+    /**
+     * Returns the configured {@link UploadQuota}, creating it if necessary.
+     * 
+     * @return the quota
+     */
+    private static synchronized UploadQuota getQuota() {
+        UploadQuota quota = UploadProcessManager.getUploadQuota();
+        if (quota == null) {
+            quota = new UploadQuota(UploadQuota.NO_LIMIT, UploadQuota.NO_LIMIT, DEFAULT_QUOTA_WINDOW_LENGTH);
+            UploadProcessManager.setUploadQuota(quota);
+        }
+        return quota;
+    }
+    
+    /**
+     * Creates a new <code>TransferManagement</code> bean.
+     */
+    public TransferManagement() {
+        super();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getActiveDownloads()
+     */
+    public int getActiveDownloads() {
+        return TransferStatistics.getActiveDownloads();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getActiveUploads()
+     */
+    public int getActiveUploads() {
+        return TransferStatistics.getActiveUploads();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getAllocatorWaitTime()
+     */
+    public long getAllocatorWaitTime() {
+        return JakartaUploadProcessor.getAllocatorWaitTime() / 1000000;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getBandwidth()
+     */
+    public int getBandwidth() {
+        return JakartaUploadProcessor.getBandwidth();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getBandwidthOfClass(java.lang.String)
+     */
+    public int getBandwidthOfClass(String bandwidthClass) {
+        return JakartaUploadProcessor.getBandwidth(bandwidthClass);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getBytesReceived()
+     */
+    public long getBytesReceived() {
+        return TransferStatistics.getBytesReceived();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getBytesSent()
+     */
+    public long getBytesSent() {
+        return TransferStatistics.getBytesSent();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getCanceledUploads()
+     */
+    public long getCanceledUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_CANCELED);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getFailedUploads()
+     */
+    public long getFailedUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_ERROR_IO);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getFileUploadSizeLimit()
+     */
+    public long getFileUploadSizeLimit() {
+        return getDefaultProfile().getFileUploadSizeLimit();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getMemoryCacheThreshold()
+     */
+    public int getMemoryCacheThreshold() {
+        return getDefaultProfile().getMemoryCacheThreshold();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getProfiles()
+     */
+    public String[] getProfiles() {
+        return UploadProcessorFactory.getProfiles();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getQuotaMaximumBytesInFlight()
+     */
+    public long getQuotaMaximumBytesInFlight() {
+        UploadQuota quota = UploadProcessManager.getUploadQuota();
+        return quota == null ? UploadQuota.NO_LIMIT : quota.getMaximumBytesInFlight();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getQuotaMaximumWindowBytes()
+     */
+    public long getQuotaMaximumWindowBytes() {
+        UploadQuota quota = UploadProcessManager.getUploadQuota();
+        return quota == null ? UploadQuota.NO_LIMIT : quota.getMaximumWindowBytes();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getReceiveRate()
+     */
+    public long getReceiveRate() {
+        return TransferStatistics.getReceiveRate();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getRejectedContentUploads()
+     */
+    public long getRejectedContentUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_ERROR_CONTENT);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getRejectedOversizeUploads()
+     */
+    public long getRejectedOversizeUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_ERROR_OVERSIZE);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getRejectedQuotaUploads()
+     */
+    public long getRejectedQuotaUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_ERROR_QUOTA);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getRejectedTimeoutUploads()
+     */
+    public long getRejectedTimeoutUploads() {
+        return TransferStatistics.getFailureCount(Upload.STATUS_ERROR_TIMEOUT);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getSendRate()
+     */
+    public long getSendRate() {
+        return TransferStatistics.getSendRate();
+    }
+    
+    /**
+     * Sums the sizes of the temporary upload files in the storage locations of the default upload processor and all
+     * profiles.  Only locations of {@link JakartaUploadProcessor}s are known.  Files of other applications following 
+     * the same naming convention in these locations are included.
+     * 
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#getTemporaryDiskUsage()
+     */
+    public long getTemporaryDiskUsage() {
+        Set locations = new HashSet();
+        String[] profiles = UploadProcessorFactory.getProfiles();
+        for (int i = -1; i < profiles.length; ++i) {
+            UploadProcessor uploadProcessor = UploadProcessorFactory.getUploadProcessor(i == -1 ? null : profiles[i]);
+            if (uploadProcessor instanceof JakartaUploadProcessor) {
+                JakartaUploadProcessor jakartaUploadProcessor = (JakartaUploadProcessor) uploadProcessor;
+                locations.add(jakartaUploadProcessor.getDiskCacheLocation().getAbsoluteFile());
+                if (jakartaUploadProcessor.getFastStorageTier() != null) {
+                    locations.add(jakartaUploadProcessor.getFastStorageTier().getLocation().getAbsoluteFile());
+                }
+            }
+        }
+        long size = 0;
+        Iterator it = locations.iterator();
+        while (it.hasNext()) {
+            File[] files = ((File) it.next()).listFiles(TEMPORARY_FILE_FILTER);
+            if (files == null) {
+                continue;
+            }
+            for (int i = 0; i < files.length; ++i) {
+                size += files[i].length();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setBandwidth(int)
+     */
+    public void setBandwidth(int newValue) {
+        JakartaUploadProcessor.setBandwidth(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setBandwidthOfClass(java.lang.String, int)
+     */
+    public void setBandwidthOfClass(String bandwidthClass, int newValue) {
+        JakartaUploadProcessor.setBandwidth(bandwidthClass, newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setFileUploadSizeLimit(long)
+     */
+    public void setFileUploadSizeLimit(long newValue) {
+        getDefaultProfile().setFileUploadSizeLimit(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setMemoryCacheThreshold(int)
+     */
+    public void setMemoryCacheThreshold(int newValue) {
+        getDefaultProfile().setMemoryCacheThreshold(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setProfileFileUploadSizeLimit(java.lang.String, 
+     *      long)
+     */
+    public void setProfileFileUploadSizeLimit(String profile, long newValue) {
+        getProfile(profile).setFileUploadSizeLimit(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setProfileMemoryCacheThreshold(java.lang.String, 
+     *      int)
+     */
+    public void setProfileMemoryCacheThreshold(String profile, int newValue) {
+        getProfile(profile).setMemoryCacheThreshold(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setQuotaMaximumBytesInFlight(long)
+     */
+    public void setQuotaMaximumBytesInFlight(long newValue) {
+        getQuota().setMaximumBytesInFlight(newValue);
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.TransferManagementMBean#setQuotaMaximumWindowBytes(long)
+     */
+    public void setQuotaMaximumWindowBytes(long newValue) {
+        getQuota().setMaximumWindowBytes(newValue);
+    }
+}
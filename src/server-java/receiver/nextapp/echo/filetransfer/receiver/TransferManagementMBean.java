@@ -0,0 +1,244 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+/**
+ * Management interface of {@link TransferManagement}.
+ */
+public interface TransferManagementMBean {
+    
+    /**
+     * Returns the number of downloads in progress.
+     * 
+     * @return the number of downloads
+     */
+    public int getActiveDownloads();
+    
+    /**
+     * Returns the number of requests currently receiving uploads.
+     * 
+     * @return the number of requests
+     */
+    public int getActiveUploads();
+    
+    /**
+     * Returns the total time transfers have waited for bandwidth to be allocated.
+     * 
+     * @return the wait time, in milliseconds
+     */
+    public long getAllocatorWaitTime();
+    
+    /**
+     * Returns the global upload bandwidth.
+     * 
+     * @return the bandwidth, in bytes per second, or 0 if not throttled
+     */
+    public int getBandwidth();
+    
+    /**
+     * Returns the upload bandwidth of a bandwidth class.
+     * 
+     * @param bandwidthClass the name of the bandwidth class
+     * @return the bandwidth, in bytes per second, or 0 if not throttled
+     */
+    public int getBandwidthOfClass(String bandwidthClass);
+    
+    /**
+     * Returns the total number of bytes received.
+     * 
+     * @return the number of bytes
+     */
+    public long getBytesReceived();
+    
+    /**
+     * Returns the total number of bytes sent.
+     * 
+     * @return the number of bytes
+     */
+    public long getBytesSent();
+    
+    /**
+     * Returns the number of uploads canceled by the user.
+     * 
+     * @return the number of uploads
+     */
+    public long getCanceledUploads();
+    
+    /**
+     * Returns the number of uploads which failed due to input/output errors.
+     * 
+     * @return the number of uploads
+     */
+    public long getFailedUploads();
+    
+    /**
+     * Returns the maximum allowed file upload size of the default upload processor.
+     * 
+     * @return the size limit, in bytes
+     */
+    public long getFileUploadSizeLimit();
+    
+    /**
+     * Returns the maximum file size that may be stored in memory by the default upload processor.
+     * 
+     * @return the memory cache threshold, in bytes
+     */
+    public int getMemoryCacheThreshold();
+    
+    /**
+     * Returns the names of the registered upload processor profiles.
+     * 
+     * @return the profile names
+     */
+    public String[] getProfiles();
+    
+    /**
+     * Returns the maximum number of bytes being received for a user at a time.
+     * 
+     * @return the maximum number of bytes, or -1 if not limited
+     */
+    public long getQuotaMaximumBytesInFlight();
+    
+    /**
+     * Returns the maximum number of bytes received for a user within a quota window.
+     * 
+     * @return the maximum number of bytes, or -1 if not limited
+     */
+    public long getQuotaMaximumWindowBytes();
+    
+    /**
+     * Returns the rate at which upload data is received.
+     * 
+     * @return the rate, in bytes per second
+     */
+    public long getReceiveRate();
+    
+    /**
+     * Returns the number of uploads rejected because their content failed validation.
+     * 
+     * @return the number of uploads
+     */
+    public long getRejectedContentUploads();
+    
+    /**
+     * Returns the number of uploads rejected for exceeding a user's quota.
+     * 
+     * @return the number of uploads
+     */
+    public long getRejectedQuotaUploads();
+    
+    /**
+     * Returns the number of uploads rejected for exceeding the size limit.
+     * 
+     * @return the number of uploads
+     */
+    public long getRejectedOversizeUploads();
+    
+    /**
+     * Returns the number of uploads terminated because the client stopped sending data or sent it too slowly.
+     * 
+     * @return the number of uploads
+     */
+    public long getRejectedTimeoutUploads();
+    
+    /**
+     * Returns the rate at which download data is sent.
+     * 
+     * @return the rate, in bytes per second
+     */
+    public long getSendRate();
+    
+    /**
+     * Returns the size of the temporary upload files in the disk cache and fast storage locations of all 
+     * upload processors.
+     * 
+     * @return the disk usage, in bytes
+     */
+    public long getTemporaryDiskUsage();
+    
+    /**
+     * Sets the global upload bandwidth.
+     * 
+     * @param newValue the bandwidth, in bytes per second, or 0 to disable throttling
+     */
+    public void setBandwidth(int newValue);
+    
+    /**
+     * Sets the upload bandwidth of a bandwidth class.
+     * 
+     * @param bandwidthClass the name of the bandwidth class
+     * @param newValue the bandwidth, in bytes per second, or 0 to disable throttling
+     */
+    public void setBandwidthOfClass(String bandwidthClass, int newValue);
+    
+    /**
+     * Sets the maximum allowed file upload size of the default upload processor.
+     * 
+     * @param newValue the size limit, in bytes, or -1 for no limit
+     */
+    public void setFileUploadSizeLimit(long newValue);
+    
+    /**
+     * Sets the maximum file size that may be stored in memory by the default upload processor.
+     * 
+     * @param newValue the memory cache threshold, in bytes
+     */
+    public void setMemoryCacheThreshold(int newValue);
+    
+    /**
+     * Sets the maximum allowed file upload size of a profile.
+     * 
+     * @param profile the name of the profile
+     * @param newValue the size limit, in bytes, or -1 for no limit
+     */
+    public void setProfileFileUploadSizeLimit(String profile, long newValue);
+    
+    /**
+     * Sets the maximum file size that may be stored in memory by a profile.
+     * 
+     * @param profile the name of the profile
+     * @param newValue the memory cache threshold, in bytes
+     */
+    public void setProfileMemoryCacheThreshold(String profile, int newValue);
+    
+    /**
+     * Sets the maximum number of bytes being received for a user at a time, enabling quotas if necessary.
+     * 
+     * @param newValue the maximum number of bytes, or -1 for no limit
+     */
+    public void setQuotaMaximumBytesInFlight(long newValue);
+    
+    /**
+     * Sets the maximum number of bytes received for a user within a quota window, enabling quotas if necessary.
+     * 
+     * @param newValue the maximum number of bytes, or -1 for no limit
+     */
+    public void setQuotaMaximumWindowBytes(long newValue);
+}
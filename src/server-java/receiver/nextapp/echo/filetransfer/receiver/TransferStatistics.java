@@ -0,0 +1,224 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nextapp.echo.filetransfer.model.Upload;
+
+/**
+ * Statistics of the file transfers of the node, collected with atomic counters.
+ * Exposed through JMX by {@link TransferManagement}.
+ */
+public class TransferStatistics {
+    
+    /**
+     * Minimum interval between samples used to compute transfer rates, in nanoseconds.
+     */
+    private static final long RATE_SAMPLE_INTERVAL = 1000L * 1000 * 1000;
+    
+    /**
+     * A byte counter and its rate.
+     */
+    private static class Rate {
+        
+        /**
+         * The total number of bytes.
+         */
+        private final AtomicLong total = new AtomicLong();
+        
+        /**
+         * The last sample, an array containing the time (<code>System.nanoTime()</code>) and total number of bytes.
+         */
+        private final AtomicReference sample = new AtomicReference(new long[]{ System.nanoTime(), 0 });
+        
+        /**
+         * The rate computed from the last two samples, in bytes per second.
+         */
+        private volatile long rate;
+        
+        /**
+         * Returns the rate in bytes per second, averaged over the time since the previous sample.
+         * A new sample is taken if the previous one is older than {@link TransferStatistics#RATE_SAMPLE_INTERVAL}.
+         * 
+         * @return the rate
+         */
+        private long getRate() {
+            long time = System.nanoTime();
+            long[] previousSample = (long[]) sample.get();
+            if (time - previousSample[0] >= RATE_SAMPLE_INTERVAL) {
+                long bytes = total.get();
+                if (sample.compareAndSet(previousSample, new long[]{ time, bytes })) {
+                    rate = (long) ((bytes - previousSample[1]) * 1E9 / (time - previousSample[0]));
+                }
+            }
+            return rate;
+        }
+    }
+    
+    private static final AtomicInteger activeDownloads = new AtomicInteger();
+    private static final AtomicInteger activeUploads = new AtomicInteger();
+    private static final Rate received = new Rate();
+    private static final Rate sent = new Rate();
+    
+    /**
+     * Numbers of failed uploads, indexed by their status.
+     */
+    private static final AtomicLongArray failures = new AtomicLongArray(Upload.STATUS_ERROR_CONTENT + 1);
+    
+    /**
+     * Records received upload data.
+     * 
+     * @param bytes the number of bytes received
+     */
+    public static void bytesReceived(long bytes) {
+        received.total.addAndGet(bytes);
+    }
+    
+    /**
+     * Records sent download data.
+     * 
+     * @param bytes the number of bytes sent
+     */
+    public static void bytesSent(long bytes) {
+        sent.total.addAndGet(bytes);
+    }
+    
+    /**
+     * Records the end of a download.
+     */
+    public static void downloadEnded() {
+        activeDownloads.decrementAndGet();
+    }
+    
+    /**
+     * Records the start of a download.
+     */
+    public static void downloadStarted() {
+        activeDownloads.incrementAndGet();
+    }
+    
+    /**
+     * Returns the number of downloads in progress.
+     * 
+     * @return the number of downloads
+     */
+    public static int getActiveDownloads() {
+        return activeDownloads.get();
+    }
+    
+    /**
+     * Returns the number of requests currently receiving uploads.
+     * 
+     * @return the number of requests
+     */
+    public static int getActiveUploads() {
+        return activeUploads.get();
+    }
+    
+    /**
+     * Returns the total number of bytes received.
+     * 
+     * @return the number of bytes
+     */
+    public static long getBytesReceived() {
+        return received.total.get();
+    }
+    
+    /**
+     * Returns the total number of bytes sent.
+     * 
+     * @return the number of bytes
+     */
+    public static long getBytesSent() {
+        return sent.total.get();
+    }
+    
+    /**
+     * Returns the number of uploads which have failed or were rejected with a specific status.
+     * 
+     * @param status the status, one of the <code>STATUS_XXX</code> constants defined in {@link Upload}
+     * @return the number of uploads
+     */
+    public static long getFailureCount(int status) {
+        if (status < 0 || status >= failures.length()) {
+            return 0;
+        }
+        return failures.get(status);
+    }
+    
+    /**
+     * Returns the rate at which upload data is received, in bytes per second, averaged over the time since the rate was
+     * last retrieved (at least one second).
+     * 
+     * @return the rate
+     */
+    public static long getReceiveRate() {
+        return received.getRate();
+    }
+    
+    /**
+     * Returns the rate at which download data is sent, in bytes per second, averaged over the time since the rate was
+     * last retrieved (at least one second).
+     * 
+     * @return the rate
+     */
+    public static long getSendRate() {
+        return sent.getRate();
+    }
+    
+    /**
+     * Records the end of a request receiving uploads.
+     * 
+     * @param uploads the uploads received by the request, whose failures are recorded
+     */
+    public static void uploadEnded(Upload[] uploads) {
+        activeUploads.decrementAndGet();
+        for (int i = 0; i < uploads.length; ++i) {
+            int status = uploads[i].getStatus();
+            if (status != Upload.STATUS_IN_PROGRESS && status != Upload.STATUS_COMPLETE && status < failures.length()) {
+                failures.incrementAndGet(status);
+            }
+        }
+    }
+    
+    /**
+     * Records the start of a request receiving uploads.
+     */
+    public static void uploadStarted() {
+        activeUploads.incrementAndGet();
+    }
+    
+    /** Non-instantiable class. */
+    private TransferStatistics() { }
+}
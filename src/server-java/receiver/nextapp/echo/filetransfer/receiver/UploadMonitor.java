@@ -31,10 +31,16 @@ package nextapp.echo.filetransfer.receiver;
 
 import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
-import nextapp.echo.filetransfer.model.UploadProcess;
+import nextapp.echo.filetransfer.model.UploadProcessSnapshot;
 
 /**
  * Handler for upload monitoring requests.  Used by servlet and Echo-service based implementations.
+ * <p>
+ * In-progress uploads are reported as <code>&lt;s p="progress/size" r="rate" e="eta"/&gt;</code>, where the rate is
+ * in bytes per second and the estimated time remaining is in milliseconds (-1 if unknown).  Paused uploads are
+ * additionally marked with <code>v="pause"</code>.  If an {@link UploadQuota} is configured, the number of bytes the 
+ * user may still upload is reported as <code>q="bytes"</code>.  The optional <code>command</code> parameter may be used to
+ * <code>cancel</code>, <code>pause</code> or <code>resume</code> the upload process.
  */
 public class UploadMonitor {
     
@@ -57,21 +63,31 @@ public class UploadMonitor {
     public static String processRequest(HttpServletRequest request) 
     throws IOException {
         String processId = request.getParameter("pid");
-        UploadProcess uploadProcess = UploadProcessManager.get(request, processId, false);
-        if (uploadProcess == null) {
-            return createResponse("<s v=\"unknownpid\"/>");
-        }
+        UploadProcessStore store = UploadProcessManager.getUploadProcessStore();
         String command = request.getParameter("command");
         if ("cancel".equals(command)) {
-            uploadProcess.cancel();
+            store.command(request, processId, UploadProcessStore.COMMAND_CANCEL);
+        } else if ("pause".equals(command)) {
+            store.command(request, processId, UploadProcessStore.COMMAND_PAUSE);
+        } else if ("resume".equals(command)) {
+            store.command(request, processId, UploadProcessStore.COMMAND_RESUME);
         }
         
-        if (uploadProcess.isCanceled()) {
+        UploadProcessSnapshot snapshot = store.getSnapshot(request, processId);
+        if (snapshot == null) {
+            return createResponse("<s v=\"unknownpid\"/>");
+        }
+        if (snapshot.isCanceled()) {
             return createResponse("<s v=\"cancel\"/>");
-        } else if (uploadProcess.isComplete()) {
+        } else if (snapshot.isComplete()) {
             return createResponse("<s v=\"complete\"/>");
         } else {
-            return createResponse("<s p=\"" + uploadProcess.getProgress() + "/" + uploadProcess.getSize() + "\"/>");        
+            UploadQuota quota = UploadProcessManager.getUploadQuota();
+            UploadQuota.Account account = quota == null ? null : quota.findAccount(request);
+            return createResponse("<s p=\"" + snapshot.getProgress() + "/" + snapshot.getSize() + 
+                    "\" r=\"" + snapshot.getTransferRate() + "\" e=\"" + snapshot.getEstimatedTimeRemaining() + "\"" +
+                    (account == null ? "" : " q=\"" + account.getRemainingBytes() + "\"") +
+                    (snapshot.isPaused() ? " v=\"pause\"/>" : "/>"));
         }
     }
     
@@ -29,20 +29,58 @@
 
 package nextapp.echo.filetransfer.receiver;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Closeable;
+import java.io.IOException;
 
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpSession;
 
 import nextapp.echo.filetransfer.model.UploadProcess;
 
 /**
  * Manages active {@link UploadProcessor} instances.
+ * <p>
+ * Processes are stored by an {@link UploadProcessStore}, by default a {@link SessionUploadProcessStore}.
+ * Custom stores may be configured by calling {@link #setUploadProcessStore(UploadProcessStore)} from within an 
+ * application entry point, before any uploads are received.
+ * <p>
+ * Per-user limits on uploaded data may be enabled by configuring an {@link UploadQuota} with 
+ * {@link #setUploadQuota(UploadQuota)}.
  */
 public class UploadProcessManager {
     
-    public static final String SESSION_KEY = UploadProcessManager.class.getName();
+    public static final String SESSION_KEY = SessionUploadProcessStore.SESSION_KEY;
+    
+    /**
+     * The configured store.
+     */
+    private static volatile UploadProcessStore store = new SessionUploadProcessStore();
+    
+    /**
+     * The configured quota, or null if uploads are not limited.
+     */
+    private static volatile UploadQuota quota;
+    
+    /**
+     * Applies an {@link UploadProcessStore} command to a process.
+     * 
+     * @param uploadProcess the process
+     * @param command the command, one of the <code>COMMAND_XXX</code> constants defined in {@link UploadProcessStore}
+     */
+    static void apply(UploadProcess uploadProcess, int command) {
+        switch (command) {
+        case UploadProcessStore.COMMAND_CANCEL:
+            uploadProcess.cancel();
+            break;
+        case UploadProcessStore.COMMAND_PAUSE:
+            uploadProcess.pause();
+            break;
+        case UploadProcessStore.COMMAND_RESUME:
+            uploadProcess.resume();
+            break;
+        default:
+            throw new IllegalArgumentException("Invalid command: " + command);
+        }
+    }
     
     /**
      * Creates or retrieves an {@link UploadProcessor} with the specified identifier.
@@ -54,24 +92,26 @@ public class UploadProcessManager {
      *        does not currently exist with the specified identifier (a value of false will return null when an
      *        <code>UploadProcessor</code> cannot be found)
      */
-    public synchronized static UploadProcess get(HttpServletRequest request, String id, boolean create) {
-        Map uploadProcessMap = (Map) request.getSession(true).getAttribute(SESSION_KEY);
-        if (uploadProcessMap == null) {
-            if (!create) {
-                return null;
-            }
-            uploadProcessMap = new HashMap();
-            request.getSession().setAttribute(SESSION_KEY, uploadProcessMap);
-        }
-        UploadProcess uploadProcess = (UploadProcess) uploadProcessMap.get(id);
-        if (uploadProcess == null) {
-            if (!create) {
-                return null;
-            }
-            uploadProcess = new UploadProcess(id);
-            uploadProcessMap.put(id, uploadProcess);
-        }
-        return uploadProcess;
+    public static UploadProcess get(HttpServletRequest request, String id, boolean create) {
+        return store.get(request, id, create);
+    }
+    
+    /**
+     * Returns the configured {@link UploadProcessStore}.
+     * 
+     * @return the store
+     */
+    public static UploadProcessStore getUploadProcessStore() {
+        return store;
+    }
+    
+    /**
+     * Returns the configured {@link UploadQuota}.
+     * 
+     * @return the quota, or null if uploads are not limited
+     */
+    public static UploadQuota getUploadQuota() {
+        return quota;
     }
     
     /**
@@ -80,19 +120,49 @@ public class UploadProcessManager {
      * @param request the incoming HTTP request whose session may contain the <code>UploadProcessor</code>
      * @param id the unique identifier of the upload processor
      */
-    public synchronized static UploadProcess remove(HttpServletRequest request, String id) {
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            return null;
+    public static UploadProcess remove(HttpServletRequest request, String id) {
+        return store.remove(request, id);
+    }
+    
+    /**
+     * Sets the {@link UploadQuota} limiting the data uploaded by each user.
+     * 
+     * @param newValue the new quota, or null to not limit uploads
+     */
+    public static void setUploadQuota(UploadQuota newValue) {
+        quota = newValue;
+    }
+    
+    /**
+     * Sets the {@link UploadProcessStore} to be used.
+     * The previous store is closed if it implements <code>Closeable</code>, e.g., a 
+     * {@link MappedFileUploadProcessStore}, after which it no longer shares the state of its processes.
+     * 
+     * @param newValue the new store
+     */
+    public static void setUploadProcessStore(UploadProcessStore newValue) {
+        if (newValue == null) {
+            throw new IllegalArgumentException("UploadProcessStore may not be null.");
         }
-        Map uploadProcessMap = (Map) session.getAttribute(SESSION_KEY);
-        if (uploadProcessMap == null) {
-            return null;
+        UploadProcessStore oldValue;
+        synchronized (UploadProcessManager.class) {
+            oldValue = store;
+            store = newValue;
         }
-        UploadProcess uploadProcess = (UploadProcess) uploadProcessMap.remove(id);
-        if (uploadProcessMap.size() == 0) {
-            session.removeAttribute(SESSION_KEY);
+        if (oldValue != newValue && oldValue instanceof Closeable) {
+            try {
+                ((Closeable) oldValue).close();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
         }
-        return uploadProcess;
+    }
+    
+    /**
+     * Closes the configured store if it implements <code>Closeable</code>, replacing it with a new 
+     * {@link SessionUploadProcessStore}, e.g., when the web application is undeployed.
+     */
+    public static void shutdown() {
+        setUploadProcessStore(new SessionUploadProcessStore());
     }
 }
@@ -0,0 +1,97 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nextapp.echo.filetransfer.model.UploadProcess;
+import nextapp.echo.filetransfer.model.UploadProcessSnapshot;
+
+/**
+ * Service provider interface for storing active {@link UploadProcess}es, used by {@link UploadProcessManager}.
+ * <p>
+ * An <code>UploadProcess</code> is only available on the node receiving its upload.  Implementations may however 
+ * make the state of a process available to monitoring requests received by other nodes, through 
+ * {@link #getSnapshot(HttpServletRequest, String)} and {@link #command(HttpServletRequest, String, int)}.
+ * Implementations must be thread-safe.
+ */
+public interface UploadProcessStore {
+    
+    /** Command canceling a process. */
+    public static final int COMMAND_CANCEL = 1;
+    
+    /** Command pausing a process. */
+    public static final int COMMAND_PAUSE = 2;
+    
+    /** Command resuming a paused process. */
+    public static final int COMMAND_RESUME = 3;
+    
+    /**
+     * Issues a command to an {@link UploadProcess}, which may be managed by another node.
+     * Commands to processes managed by other nodes may be applied asynchronously.
+     * 
+     * @param request the incoming HTTP request
+     * @param id the unique identifier of the process
+     * @param command the command, one of the <code>COMMAND_XXX</code> constants
+     * @return true if the process was found
+     */
+    public boolean command(HttpServletRequest request, String id, int command);
+    
+    /**
+     * Creates or retrieves an {@link UploadProcess} managed by this node.
+     * 
+     * @param request the incoming HTTP request
+     * @param id the unique identifier of the process
+     * @param create flag indicating whether a new <code>UploadProcess</code> should be created and stored in the event 
+     *        that one does not currently exist with the specified identifier
+     * @return the <code>UploadProcess</code>, or null if none exists and <code>create</code> is false
+     * @see UploadProcessManager#get(HttpServletRequest, String, boolean)
+     */
+    public UploadProcess get(HttpServletRequest request, String id, boolean create);
+    
+    /**
+     * Returns the current state of an {@link UploadProcess}, which may be managed by another node.
+     * 
+     * @param request the incoming HTTP request
+     * @param id the unique identifier of the process
+     * @return the state of the process, or null if the process is unknown
+     */
+    public UploadProcessSnapshot getSnapshot(HttpServletRequest request, String id);
+    
+    /**
+     * Removes an {@link UploadProcess} managed by this node.
+     * 
+     * @param request the incoming HTTP request
+     * @param id the unique identifier of the process
+     * @return the removed <code>UploadProcess</code>, or null if none existed
+     * @see UploadProcessManager#remove(HttpServletRequest, String)
+     */
+    public UploadProcess remove(HttpServletRequest request, String id);
+}
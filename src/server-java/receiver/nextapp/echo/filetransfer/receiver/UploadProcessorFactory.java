@@ -29,29 +29,66 @@
 
 package nextapp.echo.filetransfer.receiver;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Factory for retrieving the <code>UploadProcessor</code> implementation.
  * <p>
  * Custom <code>UploadProcessor</code> implementations may be configured by calling
  * {@link #setUploadProcessor(UploadProcessor)} from within an application entry point.
+ * Additional implementations, e.g., {@link UploadProcessorProfile}s, may be registered under a profile name with 
+ * {@link #setUploadProcessor(String, UploadProcessor)}, to be used by upload components specifying that profile.
  */
 public class UploadProcessorFactory {
 
     private static UploadProcessor instance;
+    
+    /**
+     * Registered profiles, mapping profile names to <code>UploadProcessor</code>s.
+     */
+    private static Map profiles = new HashMap();
+
+    /**
+     * Returns the names of all registered profiles.
+     * 
+     * @return the profile names
+     */
+    public synchronized static String[] getProfiles() {
+        return (String[]) profiles.keySet().toArray(new String[profiles.size()]);
+    }
 
     /**
      * Gets the singleton <code>UploadProcesor</code>. If it has not been set, a
-     * default implementation is created.
+     * default implementation is created, an {@link UploadProcessorProfile} with default settings.
      * 
      * @return the <code>UploadProcessor</code>.
      */
     public synchronized static UploadProcessor getUploadProcessor() {
         if (instance == null) {
-            instance = new JakartaUploadProcessor();
+            instance = new UploadProcessorProfile();
         }
         return instance;
     }
 
+    /**
+     * Gets the <code>UploadProcessor</code> registered for a profile.
+     * 
+     * @param profile the name of the profile, or null for the default <code>UploadProcessor</code>
+     * @return the <code>UploadProcessor</code>
+     * @throws IllegalArgumentException if no upload processor is registered for the profile
+     */
+    public synchronized static UploadProcessor getUploadProcessor(String profile) {
+        if (profile == null) {
+            return getUploadProcessor();
+        }
+        UploadProcessor uploadProcessor = (UploadProcessor) profiles.get(profile);
+        if (uploadProcessor == null) {
+            throw new IllegalArgumentException("No UploadProcessor configured for profile: " + profile);
+        }
+        return uploadProcessor;
+    }
+
     /**
      * Sets the upload processor to be used.
      * 
@@ -64,4 +101,18 @@ public class UploadProcessorFactory {
         }
         instance = uploadProcessor;
     }
+
+    /**
+     * Registers the upload processor to be used for a profile.
+     * 
+     * @param profile the name of the profile
+     * @param uploadProcessor the upload processor
+     * @throws IllegalStateException if an upload processor has already been registered for the profile
+     */
+    public synchronized static void setUploadProcessor(String profile, UploadProcessor uploadProcessor) {
+        if (profiles.containsKey(profile)) {
+            throw new IllegalStateException("UploadProcessor already configured for profile: " + profile);
+        }
+        profiles.put(profile, uploadProcessor);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,306 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.io.File;
+
+/**
+ * A {@link JakartaUploadProcessor} whose settings are configured through setters rather than by overriding methods.
+ * Profiles are registered under a name with {@link UploadProcessorFactory#setUploadProcessor(String, UploadProcessor)}
+ * and assigned to upload components through their <code>processorProfile</code> property, such that components of the
+ * same application may use different limits, storage and bandwidth.
+ * <p>
+ * All settings default to those of <code>JakartaUploadProcessor</code>.  Settings may be changed while uploads are
+ * being received, e.g., through {@link TransferManagement}, in which case they apply to subsequent requests.
+ */
+public class UploadProcessorProfile extends JakartaUploadProcessor {
+    
+    private volatile boolean archiveExpansionEnabled;
+    private volatile String bandwidthClass;
+    private volatile ContentValidator contentValidator;
+    private volatile File diskCacheLocation;
+    private volatile long directIOThreshold;
+    private volatile DurabilityPolicy durabilityPolicy;
+    private volatile FastStorageTier fastStorageTier;
+    private volatile long fastStorageThreshold;
+    private volatile long fileUploadSizeLimit;
+    private volatile long idleTimeout;
+    private volatile boolean liveStreamEnabled;
+    private volatile int memoryCacheThreshold;
+    private volatile long minimumRateInterval;
+    private volatile long minimumTransferRate;
+    
+    /**
+     * Creates a new <code>UploadProcessorProfile</code> with default settings.
+     */
+    public UploadProcessorProfile() {
+        super();
+        archiveExpansionEnabled = super.isArchiveExpansionEnabled();
+        bandwidthClass = super.getBandwidthClass();
+        contentValidator = super.getContentValidator();
+        diskCacheLocation = super.getDiskCacheLocation();
+        directIOThreshold = super.getDirectIOThreshold();
+        durabilityPolicy = super.getDurabilityPolicy();
+        fastStorageTier = super.getFastStorageTier();
+        fastStorageThreshold = super.getFastStorageThreshold();
+        fileUploadSizeLimit = super.getFileUploadSizeLimit();
+        idleTimeout = super.getIdleTimeout();
+        liveStreamEnabled = super.isLiveStreamEnabled();
+        memoryCacheThreshold = super.getMemoryCacheThreshold();
+        minimumRateInterval = super.getMinimumRateInterval();
+        minimumTransferRate = super.getMinimumTransferRate();
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getBandwidthClass()
+     */
+    public String getBandwidthClass() {
+        return bandwidthClass;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getContentValidator()
+     */
+    public ContentValidator getContentValidator() {
+        return contentValidator;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getDiskCacheLocation()
+     */
+    public File getDiskCacheLocation() {
+        return diskCacheLocation;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getDirectIOThreshold()
+     */
+    public long getDirectIOThreshold() {
+        return directIOThreshold;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getDurabilityPolicy()
+     */
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getFastStorageTier()
+     */
+    public FastStorageTier getFastStorageTier() {
+        return fastStorageTier;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getFastStorageThreshold()
+     */
+    public long getFastStorageThreshold() {
+        return fastStorageThreshold;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getFileUploadSizeLimit()
+     */
+    public long getFileUploadSizeLimit() {
+        return fileUploadSizeLimit;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getIdleTimeout()
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getMemoryCacheThreshold()
+     */
+    public int getMemoryCacheThreshold() {
+        return memoryCacheThreshold;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getMinimumRateInterval()
+     */
+    public long getMinimumRateInterval() {
+        return minimumRateInterval;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#getMinimumTransferRate()
+     */
+    public long getMinimumTransferRate() {
+        return minimumTransferRate;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#isArchiveExpansionEnabled()
+     */
+    public boolean isArchiveExpansionEnabled() {
+        return archiveExpansionEnabled;
+    }
+    
+    /**
+     * @see nextapp.echo.filetransfer.receiver.JakartaUploadProcessor#isLiveStreamEnabled()
+     */
+    public boolean isLiveStreamEnabled() {
+        return liveStreamEnabled;
+    }
+    
+    /**
+     * Sets whether ZIP archives should be expanded as they are received, creating an upload for each contained file.
+     * 
+     * @param newValue true to expand archives
+     */
+    public void setArchiveExpansionEnabled(boolean newValue) {
+        archiveExpansionEnabled = newValue;
+    }
+    
+    /**
+     * Sets the bandwidth class whose bandwidth is shared by uploads received with this profile.
+     * 
+     * @param newValue the name of the bandwidth class, or null to use the global bandwidth
+     * @see JakartaUploadProcessor#setBandwidth(String, int)
+     */
+    public void setBandwidthClass(String newValue) {
+        bandwidthClass = newValue;
+    }
+    
+    /**
+     * Sets the {@link ContentValidator} inspecting the beginning of each upload.
+     * 
+     * @param newValue the {@link ContentValidator}, or null
+     */
+    public void setContentValidator(ContentValidator newValue) {
+        contentValidator = newValue;
+    }
+    
+    /**
+     * Sets the location where cached files should be stored to disk.
+     * 
+     * @param newValue the disk cache location
+     */
+    public void setDiskCacheLocation(File newValue) {
+        diskCacheLocation = newValue;
+    }
+    
+    /**
+     * Sets the number of bytes of an upload beyond which direct I/O is used.
+     * 
+     * @param newValue the direct I/O threshold, in bytes, or {@link #NO_DIRECT_IO}
+     * @see JakartaUploadProcessor#getDirectIOThreshold()
+     */
+    public void setDirectIOThreshold(long newValue) {
+        directIOThreshold = newValue;
+    }
+    
+    /**
+     * Sets the {@link DurabilityPolicy} used to commit completed uploads to stable storage.
+     * 
+     * @param newValue the {@link DurabilityPolicy}, or null
+     */
+    public void setDurabilityPolicy(DurabilityPolicy newValue) {
+        durabilityPolicy = newValue;
+    }
+    
+    /**
+     * Sets the {@link FastStorageTier} to which uploads should initially be written.
+     * 
+     * @param newValue the {@link FastStorageTier}, or null
+     */
+    public void setFastStorageTier(FastStorageTier newValue) {
+        fastStorageTier = newValue;
+    }
+    
+    /**
+     * Sets the maximum size of an upload which may be stored in the {@link FastStorageTier}.
+     * 
+     * @param newValue the fast storage threshold, in bytes
+     */
+    public void setFastStorageThreshold(long newValue) {
+        fastStorageThreshold = newValue;
+    }
+    
+    /**
+     * Sets the maximum allowed file upload size.
+     * 
+     * @param newValue the maximum allowed file upload size, in bytes, or {@link #NO_SIZE_LIMIT}
+     */
+    public void setFileUploadSizeLimit(long newValue) {
+        fileUploadSizeLimit = newValue;
+    }
+    
+    /**
+     * Sets the time after which a request is terminated if no data has been received.
+     * 
+     * @param newValue the idle timeout, in milliseconds, or {@link #NO_IDLE_TIMEOUT}
+     */
+    public void setIdleTimeout(long newValue) {
+        idleTimeout = newValue;
+    }
+    
+    /**
+     * Sets whether uploads may be read while they are still arriving.
+     * 
+     * @param newValue true to enable live streams
+     */
+    public void setLiveStreamEnabled(boolean newValue) {
+        liveStreamEnabled = newValue;
+    }
+    
+    /**
+     * Sets the maximum file size that may be stored in memory.
+     * 
+     * @param newValue the memory cache threshold, in bytes
+     */
+    public void setMemoryCacheThreshold(int newValue) {
+        memoryCacheThreshold = newValue;
+    }
+    
+    /**
+     * Sets the interval over which the transfer rate of a request is measured to enforce the minimum transfer rate.
+     * 
+     * @param newValue the minimum rate interval, in milliseconds
+     */
+    public void setMinimumRateInterval(long newValue) {
+        minimumRateInterval = newValue;
+    }
+    
+    /**
+     * Sets the minimum rate at which a client must send data.
+     * 
+     * @param newValue the minimum transfer rate, in bytes per second, or {@link #NO_MINIMUM_RATE}
+     */
+    public void setMinimumTransferRate(long newValue) {
+        minimumTransferRate = newValue;
+    }
+}
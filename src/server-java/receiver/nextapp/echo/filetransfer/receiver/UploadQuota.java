@@ -0,0 +1,370 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.receiver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Limits the data uploaded by each user, both the number of bytes being received at a time and the number of bytes
+ * received within a time window.  Uploads exceeding a quota are terminated by the receiver, uploads started while a 
+ * quota is exhausted are rejected.  Both are marked with {@link nextapp.echo.filetransfer.model.Upload#STATUS_ERROR_QUOTA}.
+ * <p>
+ * Users are identified by their remote user name if authenticated, otherwise by their session, see 
+ * {@link #getKey(HttpServletRequest, boolean)}.  Accounting only acquires the lock of the user's own account, which is
+ * uncontended unless the user is uploading concurrently.  A quota is enabled by configuring it with 
+ * {@link UploadProcessManager#setUploadQuota(UploadQuota)}.
+ */
+public class UploadQuota {
+    
+    /**
+     * Constant indicating that there is no limit.
+     */
+    public static final long NO_LIMIT = -1;
+    
+    /**
+     * The upload accounting of a single user.
+     */
+    public class Account {
+        
+        /**
+         * The number of bytes received by requests in progress.
+         */
+        private AtomicLong bytesInFlight = new AtomicLong();
+        
+        /**
+         * The number of bytes received within the current window, guarded by the account.
+         */
+        private long windowBytes = 0;
+        
+        /**
+         * The start time of the current window (<code>System.currentTimeMillis()</code>), guarded by the account.
+         */
+        private long windowStartTime = System.currentTimeMillis();
+        
+        /**
+         * The number of requests which have acquired the account and not yet released it, guarded by the account.
+         */
+        private int users = 0;
+        
+        /**
+         * Flag indicating whether the account has been purged, after which it may no longer be acquired.  Guarded by 
+         * the account.
+         */
+        private boolean purged = false;
+        
+        /**
+         * Creates a new <code>Account</code>.
+         */
+        private Account() {
+            super();
+        }
+        
+        /**
+         * Records received data.
+         * 
+         * @param bytes the number of bytes received
+         * @return true if the data is within the quota, false if the quota has been exceeded
+         */
+        boolean consume(long bytes) {
+            long windowBytes;
+            synchronized (this) {
+                updateWindow(System.currentTimeMillis());
+                windowBytes = this.windowBytes += bytes;
+            }
+            long bytesInFlight = this.bytesInFlight.addAndGet(bytes);
+            return (maximumBytesInFlight == NO_LIMIT || bytesInFlight <= maximumBytesInFlight) 
+                    && (maximumWindowBytes == NO_LIMIT || windowBytes <= maximumWindowBytes);
+        }
+        
+        /**
+         * Returns the number of bytes currently being received, by all requests of the user.
+         * 
+         * @return the number of bytes in flight
+         */
+        public long getBytesInFlight() {
+            return bytesInFlight.get();
+        }
+        
+        /**
+         * Returns the number of bytes which may still be received before a quota is exceeded.
+         * 
+         * @return the number of bytes, or {@link UploadQuota#NO_LIMIT} if no limit is configured
+         */
+        public long getRemainingBytes() {
+            long remaining = NO_LIMIT;
+            if (maximumBytesInFlight != NO_LIMIT) {
+                remaining = Math.max(0, maximumBytesInFlight - getBytesInFlight());
+            }
+            if (maximumWindowBytes != NO_LIMIT) {
+                long remainingWindowBytes = Math.max(0, maximumWindowBytes - getWindowBytes());
+                remaining = remaining == NO_LIMIT ? remainingWindowBytes : Math.min(remaining, remainingWindowBytes);
+            }
+            return remaining;
+        }
+        
+        /**
+         * Returns the number of bytes received within the current time window.
+         * 
+         * @return the number of bytes
+         */
+        public synchronized long getWindowBytes() {
+            updateWindow(System.currentTimeMillis());
+            return windowBytes;
+        }
+        
+        /**
+         * Determines whether the account is idle, i.e., it is not acquired by any request and the window has expired.
+         * Must be invoked while holding the lock of the account.
+         * 
+         * @param time the current time
+         * @return true if the account is idle
+         */
+        private boolean isIdle(long time) {
+            return users == 0 && bytesInFlight.get() == 0 && time - windowStartTime >= windowLength;
+        }
+        
+        /**
+         * Releases the account after a request has completed, removing its data from the bytes in flight.
+         * 
+         * @param bytes the number of bytes received by the request
+         * @see UploadQuota#acquireAccount(HttpServletRequest)
+         */
+        void release(long bytes) {
+            bytesInFlight.addAndGet(-bytes);
+            synchronized (this) {
+                --users;
+            }
+        }
+        
+        /**
+         * Starts a new window if the current window has expired.  Must be invoked while holding the lock of the account.
+         * 
+         * @param time the current time
+         */
+        private void updateWindow(long time) {
+            if (time - windowStartTime >= windowLength) {
+                windowStartTime = time;
+                windowBytes = 0;
+            }
+        }
+    }
+    
+    private volatile long maximumBytesInFlight;
+    private volatile long maximumWindowBytes;
+    private long windowLength;
+    
+    /**
+     * Accounts, mapping user keys to {@link Account}s.
+     */
+    private ConcurrentMap accounts = new ConcurrentHashMap();
+    
+    /**
+     * Time at which idle accounts were last purged.
+     */
+    private AtomicLong purgeTime = new AtomicLong(System.currentTimeMillis());
+    
+    /**
+     * Creates a new <code>UploadQuota</code>.
+     * 
+     * @param maximumBytesInFlight the maximum number of bytes being received for a user at a time, or 
+     *        {@link #NO_LIMIT}
+     * @param maximumWindowBytes the maximum number of bytes received for a user within a window, or {@link #NO_LIMIT}
+     * @param windowLength the length of a window, in milliseconds
+     */
+    public UploadQuota(long maximumBytesInFlight, long maximumWindowBytes, long windowLength) {
+        super();
+        if (windowLength <= 0) {
+            throw new IllegalArgumentException("Invalid window length: " + windowLength);
+        }
+        this.maximumBytesInFlight = maximumBytesInFlight;
+        this.maximumWindowBytes = maximumWindowBytes;
+        this.windowLength = windowLength;
+    }
+    
+    /**
+     * Acquires the account of the user making a request on behalf of the request, creating it if necessary.  
+     * An acquired account is not purged, it must be released with {@link Account#release(long)} once the request has
+     * completed.
+     * 
+     * @param request the HTTP request
+     * @return the account
+     */
+    Account acquireAccount(HttpServletRequest request) {
+        String key = getKey(request, true);
+        while (true) {
+            Account account = getAccount(key);
+            synchronized (account) {
+                if (!account.purged) {
+                    ++account.users;
+                    return account;
+                }
+            }
+            // Account purged concurrently, a new account will be created.
+            accounts.remove(key, account);
+        }
+    }
+    
+    /**
+     * Returns the account of the specified user, creating it if necessary.
+     * The account may be purged once idle, thus should not be retained.
+     * 
+     * @param key the user key
+     * @return the account
+     */
+    public Account getAccount(String key) {
+        Account account = (Account) accounts.get(key);
+        if (account == null) {
+            purge();
+            account = new Account();
+            Account existingAccount = (Account) accounts.putIfAbsent(key, account);
+            if (existingAccount != null) {
+                account = existingAccount;
+            }
+        }
+        return account;
+    }
+    
+    /**
+     * Returns the account of the user making a request, creating it if necessary.
+     * 
+     * @param request the HTTP request
+     * @return the account
+     */
+    public Account getAccount(HttpServletRequest request) {
+        return getAccount(getKey(request, true));
+    }
+    
+    /**
+     * Returns the account of the user making a request, if one exists.
+     * Neither an account nor a session is created, thus the method may be used to report the state of a quota to 
+     * requests which do not themselves upload data, e.g., monitoring requests.
+     * 
+     * @param request the HTTP request
+     * @return the account, or null if the user has no account
+     */
+    public Account findAccount(HttpServletRequest request) {
+        String key = getKey(request, false);
+        return key == null ? null : (Account) accounts.get(key);
+    }
+    
+    /**
+     * Determines the key identifying the user making a request.
+     * The default implementation returns the remote user name, if the user is authenticated, or the session id.
+     * May be overridden to, e.g., group users by organization.
+     * 
+     * @param request the HTTP request
+     * @param create true if state required to identify the user, e.g., a session, may be created
+     * @return the key, or null if <code>create</code> is false and the user cannot be identified without creating state
+     */
+    protected String getKey(HttpServletRequest request, boolean create) {
+        String user = request.getRemoteUser();
+        if (user != null) {
+            return "user:" + user;
+        }
+        HttpSession session = request.getSession(create);
+        return session == null ? null : "session:" + session.getId();
+    }
+    
+    /**
+     * Returns the maximum number of bytes being received for a user at a time.
+     * 
+     * @return the maximum number of bytes, or {@link #NO_LIMIT}
+     */
+    public long getMaximumBytesInFlight() {
+        return maximumBytesInFlight;
+    }
+    
+    /**
+     * Returns the maximum number of bytes received for a user within a window.
+     * 
+     * @return the maximum number of bytes, or {@link #NO_LIMIT}
+     */
+    public long getMaximumWindowBytes() {
+        return maximumWindowBytes;
+    }
+    
+    /**
+     * Returns the length of a window.
+     * 
+     * @return the window length, in milliseconds
+     */
+    public long getWindowLength() {
+        return windowLength;
+    }
+    
+    /**
+     * Sets the maximum number of bytes being received for a user at a time.
+     * The new limit applies to subsequently received data.
+     * 
+     * @param newValue the maximum number of bytes, or {@link #NO_LIMIT}
+     */
+    public void setMaximumBytesInFlight(long newValue) {
+        maximumBytesInFlight = newValue;
+    }
+    
+    /**
+     * Sets the maximum number of bytes received for a user within a window.
+     * The new limit applies to subsequently received data.
+     * 
+     * @param newValue the maximum number of bytes, or {@link #NO_LIMIT}
+     */
+    public void setMaximumWindowBytes(long newValue) {
+        maximumWindowBytes = newValue;
+    }
+    
+    /**
+     * Removes idle accounts, at most once per window.  Accounts are only removed once they no longer affect any quota.
+     */
+    private void purge() {
+        long time = System.currentTimeMillis();
+        long lastPurgeTime = purgeTime.get();
+        if (time - lastPurgeTime < windowLength || !purgeTime.compareAndSet(lastPurgeTime, time)) {
+            return;
+        }
+        Iterator it = accounts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            Account account = (Account) entry.getValue();
+            synchronized (account) {
+                if (account.isIdle(time)) {
+                    account.purged = true;
+                    accounts.remove(entry.getKey(), account);
+                }
+            }
+        }
+    }
+}
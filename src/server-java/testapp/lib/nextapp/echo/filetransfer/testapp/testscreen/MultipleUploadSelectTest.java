@@ -207,6 +207,15 @@ public class MultipleUploadSelectTest extends SplitPane {
                 case Upload.STATUS_ERROR_OVERSIZE:
                     InteractiveApp.getApp().consoleWrite("Upload ERROR OVERSIZE: " + e.getUpload());
                     break;
+                case Upload.STATUS_ERROR_TIMEOUT:
+                    InteractiveApp.getApp().consoleWrite("Upload ERROR TIMEOUT: " + e.getUpload());
+                    break;
+                case Upload.STATUS_ERROR_QUOTA:
+                    InteractiveApp.getApp().consoleWrite("Upload ERROR QUOTA: " + e.getUpload());
+                    break;
+                case Upload.STATUS_ERROR_CONTENT:
+                    InteractiveApp.getApp().consoleWrite("Upload ERROR CONTENT: " + e.getUpload());
+                    break;
                 case Upload.STATUS_IN_PROGRESS:
                     InteractiveApp.getApp().consoleWrite("Upload IN PROGRESS: " + e.getUpload());
                     break;
@@ -215,6 +215,24 @@ public class UploadSelectTest extends SplitPane {
                             }
                             InteractiveApp.getApp().consoleWrite("Upload ERROR OVERSIZE: " + e.getUpload());
                             break;
+                        case Upload.STATUS_ERROR_TIMEOUT:
+                            if (e.getUpload().getInputStream() != null) {
+                                throw new RuntimeException("InputStream available for failed upload, this should not happen");
+                            }
+                            InteractiveApp.getApp().consoleWrite("Upload ERROR TIMEOUT: " + e.getUpload());
+                            break;
+                        case Upload.STATUS_ERROR_QUOTA:
+                            if (e.getUpload().getInputStream() != null) {
+                                throw new RuntimeException("InputStream available for failed upload, this should not happen");
+                            }
+                            InteractiveApp.getApp().consoleWrite("Upload ERROR QUOTA: " + e.getUpload());
+                            break;
+                        case Upload.STATUS_ERROR_CONTENT:
+                            if (e.getUpload().getInputStream() != null) {
+                                throw new RuntimeException("InputStream available for failed upload, this should not happen");
+                            }
+                            InteractiveApp.getApp().consoleWrite("Upload ERROR CONTENT: " + e.getUpload());
+                            break;
                         case Upload.STATUS_IN_PROGRESS:
                             InteractiveApp.getApp().consoleWrite("Upload IN PROGRESS: " + e.getUpload());
                             break;
@@ -78,7 +78,7 @@ public abstract class AbstractUploadSelectPeer extends AbstractComponentSynchron
                 UploadProcess uploadProcess = UploadProcessManager.remove(conn.getRequest(), processId);
                 Upload[] uploads = uploadProcess.getUploads();
                 super.processEvent(context, component, uploads);
-                uploadProcess.dispose();
+                ((AbstractUploadSelect) component).processUploads(uploadProcess);
             }
 
             /**
@@ -136,14 +136,14 @@ public abstract class AbstractUploadSelectPeer extends AbstractComponentSynchron
     
     /**
      * Returns the {@link UploadProcessor} which should be used for the specified upload component
-     * Default implementation retrieves value from {@link UploadProcessorFactory}.
+     * Default implementation retrieves value from {@link UploadProcessorFactory}, for the component's processor profile.
      * This method is intended to be overridden when necessary.
      * 
      * @param component the component
      * @return the {@link UploadProcessor}
      */
     public UploadProcessor getUploadProcessor(AbstractUploadSelect component) {
-        return UploadProcessorFactory.getUploadProcessor();
+        return UploadProcessorFactory.getUploadProcessor(component.getProcessorProfile());
     }
 
     /**
@@ -29,6 +29,7 @@
 
 package nextapp.echo.filetransfer.webcontainer;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -36,6 +37,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import nextapp.echo.filetransfer.app.DownloadCommand;
 import nextapp.echo.filetransfer.app.DownloadProvider;
+import nextapp.echo.filetransfer.receiver.TransferStatistics;
 import nextapp.echo.webcontainer.Connection;
 import nextapp.echo.webcontainer.ContentType;
 import nextapp.echo.webcontainer.Service;
@@ -55,6 +57,39 @@ implements Service {
     private static final String PARAMETER_DOWNLOAD_UID = "duid";
     private static final String[] URL_PARAMETERS = new String[] { PARAMETER_DOWNLOAD_UID };
     private static final DownloadService INSTANCE = new DownloadService();
+    
+    /**
+     * Stream recording the bytes written to it in the {@link TransferStatistics}.
+     */
+    private static class StatisticsOutputStream extends FilterOutputStream {
+        
+        /**
+         * Creates a new <code>StatisticsOutputStream</code>.
+         * 
+         * @param out the stream to write to
+         */
+        private StatisticsOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        /**
+         * @see java.io.FilterOutputStream#write(int)
+         */
+        public void write(int b) 
+        throws IOException {
+            out.write(b);
+            TransferStatistics.bytesSent(1);
+        }
+        
+        /**
+         * @see java.io.FilterOutputStream#write(byte[], int, int)
+         */
+        public void write(byte[] b, int off, int len) 
+        throws IOException {
+            out.write(b, off, len);
+            TransferStatistics.bytesSent(len);
+        }
+    }
 
     /**
      * Installs the service in the registry.
@@ -126,7 +161,7 @@ implements Service {
      */
     private void service(Connection conn, DownloadCommand download)
     throws IOException {
-        OutputStream out = conn.getOutputStream();
+        OutputStream out = new StatisticsOutputStream(conn.getOutputStream());
         DownloadProvider provider = download.getProvider();
         HttpServletResponse response = conn.getResponse();
 
@@ -146,7 +181,12 @@ implements Service {
         }
         response.setHeader("Cache-Control", "");
         response.setHeader("Pragma", "");
-        provider.writeFile(out);
+        TransferStatistics.downloadStarted();
+        try {
+            provider.writeFile(out);
+        } finally {
+            TransferStatistics.downloadEnded();
+        }
     }
 
     /**
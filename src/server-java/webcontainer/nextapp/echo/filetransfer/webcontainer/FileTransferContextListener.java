@@ -0,0 +1,72 @@
+/* 
+ * This file is part of the Echo File Transfer Library.
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.filetransfer.webcontainer;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import nextapp.echo.filetransfer.app.AbstractUploadSelect;
+import nextapp.echo.filetransfer.model.AsyncUploadProcessDispatcher;
+import nextapp.echo.filetransfer.receiver.JakartaUploadProcessor;
+import nextapp.echo.filetransfer.receiver.TransferManagement;
+import nextapp.echo.filetransfer.receiver.UploadProcessManager;
+
+/**
+ * <code>ServletContextListener</code> which registers the {@link TransferManagement} bean when the web application is
+ * deployed, and unregisters it and stops the background threads of the File Transfer Library when the web 
+ * application is undeployed, such that they do not retain the application's class loader.
+ * Register in the deployment descriptor of the web application:
+ * <pre>
+ * &lt;listener&gt;
+ *   &lt;listener-class&gt;nextapp.echo.filetransfer.webcontainer.FileTransferContextListener&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ */
+public class FileTransferContextListener 
+implements ServletContextListener {
+
+    /**
+     * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+     */
+    public void contextInitialized(ServletContextEvent e) {
+        TransferManagement.register();
+    }
+
+    /**
+     * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+     */
+    public void contextDestroyed(ServletContextEvent e) {
+        TransferManagement.unregister();
+        JakartaUploadProcessor.shutdown();
+        AsyncUploadProcessDispatcher.shutdownInstance();
+        UploadProcessManager.shutdown();
+        AbstractUploadSelect.shutdownDefaultProcessingExecutor();
+    }
+}